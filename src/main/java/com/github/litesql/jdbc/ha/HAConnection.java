@@ -2,11 +2,11 @@ package com.github.litesql.jdbc.ha;
 
 import java.io.IOException;
 import java.net.URL;
-import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -17,6 +17,7 @@ import org.jkiss.utils.CommonUtils;
 import com.dbeaver.jdbc.model.AbstractJdbcConnection;
 import com.github.litesql.jdbc.ha.client.HAClient;
 import com.github.litesql.jdbc.ha.client.HAExecutionResult;
+import com.github.litesql.jdbc.ha.client.HAMetadataCache;
 
 public class HAConnection extends AbstractJdbcConnection {
 
@@ -30,16 +31,35 @@ public class HAConnection extends AbstractJdbcConnection {
 	private final Map<String, Object> driverProperties;
 
 	private HAEmbeddedReplicasManager.ReplicaConn embeddedReplicaManager;
-	private Connection embeddedReplica;
 
 	private boolean closed;
 
 	private boolean autoCommit;
 
+	private boolean readOnly;
+
+	private final String initialCatalog;
+
 	private HADatabaseMetaData databaseMetaData;
 
 	private int queryTimeout;
 
+	private final boolean cursorFetch;
+	private final int metadataCheckInterval;
+
+	/**
+	 * Closed prepared statements by SQL, least recently closed first;
+	 * {@code null} when statement caching is disabled.
+	 */
+	private final Map<String, HAPreparedStatement.ParsedSql> statementCache;
+
+	private final long replicaWaitTimeout;
+
+	private final long initialMaxReplicaLag;
+	private final long initialMaxReplicaStaleness;
+	private long maxReplicaLag;
+	private long maxReplicaStaleness;
+
 	private Logger logger = Logger.getLogger("com.github.litesql.jdbc.driver.ha");
 
 	public HAConnection(@NotNull HADriver driver, @NotNull String url, int queryTimeout,
@@ -50,15 +70,43 @@ public class HAConnection extends AbstractJdbcConnection {
 		this.autoCommit = true;
 		this.queryTimeout = queryTimeout;
 		this.closed = false;
+		this.cursorFetch = HAUtils.getBooleanProperty(driverProperties, HAConstants.CONNECTION_PROPERTY_CURSOR_FETCH,
+				false);
+		this.replicaWaitTimeout = HAUtils.getLongProperty(driverProperties,
+				HAConstants.CONNECTION_PROPERTY_REPLICA_WAIT_TIMEOUT, 0);
+		this.initialMaxReplicaLag = HAUtils.getLongProperty(driverProperties,
+				HAConstants.CONNECTION_PROPERTY_MAX_REPLICA_LAG, 0);
+		this.initialMaxReplicaStaleness = HAUtils.getLongProperty(driverProperties,
+				HAConstants.CONNECTION_PROPERTY_MAX_REPLICA_STALENESS, 0);
+		this.metadataCheckInterval = HAUtils.getIntProperty(driverProperties,
+				HAConstants.CONNECTION_PROPERTY_METADATA_CHECK_INTERVAL, 1000);
+		int prepStmtCacheSize = HAUtils.getIntProperty(driverProperties,
+				HAConstants.CONNECTION_PROPERTY_PREP_STMT_CACHE_SIZE, 0);
+		this.statementCache = prepStmtCacheSize <= 0 ? null
+				: new LinkedHashMap<String, HAPreparedStatement.ParsedSql>(16, 0.75f, true) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<String, HAPreparedStatement.ParsedSql> eldest) {
+						return size() > prepStmtCacheSize;
+					}
+				};
+		this.maxReplicaLag = this.initialMaxReplicaLag;
+		this.maxReplicaStaleness = this.initialMaxReplicaStaleness;
 
 		try {
 			String token = CommonUtils.toString(driverProperties.get("password"), null);
 			boolean enableSSL = Boolean.TRUE.equals(driverProperties.get(HAConstants.CONNECTION_PROPERTY_ENABLE_SSL));
-			this.client = new HAClient(new URL(url), token, enableSSL);
+			int maxPendingRequests = HAUtils.getIntProperty(driverProperties,
+					HAConstants.CONNECTION_PROPERTY_MAX_PENDING_REQUESTS, HAClient.DEFAULT_MAX_PENDING_REQUESTS);
+			this.client = new HAClient(new URL(url), token, enableSSL, maxPendingRequests);
+			this.client.setLazyDecode(HAUtils.getBooleanProperty(driverProperties,
+					HAConstants.CONNECTION_PROPERTY_LAZY_DECODE, false));
+			this.client.setResultCache(
+					HAUtils.getLongProperty(driverProperties, HAConstants.CONNECTION_PROPERTY_RESULT_CACHE_SIZE, 0),
+					HAUtils.getLongProperty(driverProperties, HAConstants.CONNECTION_PROPERTY_RESULT_CACHE_TTL, 1000));
+			this.initialCatalog = client.getReplicationID();
 			this.embeddedReplicaManager = HAEmbeddedReplicasManager.getReplica(client.getReplicationID());
-			if (this.embeddedReplicaManager != null) {
-				this.embeddedReplica = this.embeddedReplicaManager.createConn();
-			}
 		} catch (IOException e) {
 			throw new SQLException(e);
 		}
@@ -76,8 +124,11 @@ public class HAConnection extends AbstractJdbcConnection {
 
 	@Override
 	public boolean isValid(int timeout) throws SQLException {
+		if (this.closed) {
+			return false;
+		}
 		try {
-			getClient().executeQuery("SELECT 1", null, timeout);
+			getClient().ping(timeout);
 		} catch (Exception e) {
 			return false;
 		}
@@ -118,7 +169,7 @@ public class HAConnection extends AbstractJdbcConnection {
 	@Override
 	public boolean isReadOnly() throws SQLException {
 		HAExecutionResult result = getClient().executeQuery("PRAGMA query_only", null, this.queryTimeout);
-		return result.getRows().get(0)[0].equals(1);
+		return result.getRowCount() > 0 && result.getLong(0, 0) == 1;
 	}
 
 	@Override
@@ -128,6 +179,28 @@ public class HAConnection extends AbstractJdbcConnection {
 		} else {
 			getClient().executeUpdate("PRAGMA query_only = 0", null, this.queryTimeout);
 		}
+		this.readOnly = readOnly;
+	}
+
+	/**
+	 * Restore the state a pooled connection had when it was opened: rolls back
+	 * any open transaction, re-enables auto commit, clears
+	 * {@code PRAGMA query_only} and switches back to the initial catalog.
+	 */
+	protected void resetState() throws SQLException {
+		if (!this.autoCommit) {
+			getClient().executeUpdate("ROLLBACK", null, this.queryTimeout);
+			this.autoCommit = true;
+		}
+		if (this.readOnly) {
+			setReadOnly(false);
+		}
+		if (this.initialCatalog != null && !this.initialCatalog.isEmpty()
+				&& !this.initialCatalog.equals(getCatalog())) {
+			setCatalog(this.initialCatalog);
+		}
+		this.maxReplicaLag = this.initialMaxReplicaLag;
+		this.maxReplicaStaleness = this.initialMaxReplicaStaleness;
 	}
 
 	/**
@@ -137,16 +210,118 @@ public class HAConnection extends AbstractJdbcConnection {
 		return client;
 	}
 
-	protected Connection getEmbeddedReplica() {
-		return this.embeddedReplica;
+	/**
+	 * Besides the connection itself, unwraps to the {@link HAClient} to give
+	 * access to the asynchronous query API.
+	 */
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		if (iface.isInstance(client)) {
+			return iface.cast(client);
+		}
+		throw new SQLException("Connection does not wrap " + iface.getName());
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || iface.isInstance(client);
+	}
+
+	/**
+	 * @return whether SELECT statements with a fetch size read their result in
+	 *         pages.
+	 */
+	protected boolean isCursorFetch() {
+		return this.cursorFetch;
+	}
+
+	/**
+	 * @return the schema of the current database, cached driver-wide. It is read
+	 *         from the embedded replica when the replica is up to date.
+	 */
+	HAMetadataCache.Schema getSchemaSnapshot() throws SQLException {
+		HAEmbeddedReplicasManager.ReplicaConn replica = getEmbeddedReplica();
+		if (replica != null && isReplicaUpdated(this.maxReplicaLag, this.maxReplicaStaleness)) {
+			HAMetadataCache.Schema schema = HAMetadataCache.getReplicaSchema(replica.getDsn(),
+					getClient().getReplicationID(), sql -> replica.executeQuery(sql, null));
+			if (schema != null) {
+				return schema;
+			}
+		}
+		return getClient().getSchema(this.metadataCheckInterval, this.queryTimeout);
 	}
 
-	protected boolean isReplicaUpdated() {
+	protected HAEmbeddedReplicasManager.ReplicaConn getEmbeddedReplica() {
+		if (this.embeddedReplicaManager == null || this.embeddedReplicaManager.isClosed()) {
+			// replicas loaded in the background become available later, idle ones are
+			// activated again
+			this.embeddedReplicaManager = HAEmbeddedReplicasManager.getReplica(getClient().getReplicationID());
+		}
+		return this.embeddedReplicaManager;
+	}
+
+	public long getMaxReplicaLag() {
+		return this.maxReplicaLag;
+	}
+
+	/**
+	 * @param maxReplicaLag number of transactions the embedded replica may be
+	 *                      behind this connection and still serve SELECTs, 0 to
+	 *                      require an up to date replica. Statements created
+	 *                      afterwards inherit the value.
+	 */
+	public void setMaxReplicaLag(long maxReplicaLag) {
+		this.maxReplicaLag = maxReplicaLag;
+	}
+
+	public long getMaxReplicaStaleness() {
+		return this.maxReplicaStaleness;
+	}
+
+	/**
+	 * @param maxReplicaStaleness milliseconds since the embedded replica was
+	 *                            last seen caught up with the server, within
+	 *                            which it may serve SELECTs while behind this
+	 *                            connection, 0 to require an up to date replica.
+	 *                            Statements created afterwards inherit the value.
+	 */
+	public void setMaxReplicaStaleness(long maxReplicaStaleness) {
+		this.maxReplicaStaleness = maxReplicaStaleness;
+	}
+
+	/**
+	 * @param maxLag       tolerated number of transactions the replica is behind
+	 * @param maxStaleness tolerated milliseconds since the replica was last seen
+	 *                     at or past the txseq of the server
+	 * @return whether SELECTs can be served by the embedded replica.
+	 */
+	protected boolean isReplicaUpdated(long maxLag, long maxStaleness) {
 		if (this.embeddedReplicaManager == null) {
 			return false;
 		}
 
-		return this.embeddedReplicaManager.txseq >= getClient().getTxseq();
+		long txseq = getClient().getTxseq();
+		this.embeddedReplicaManager.observeLeader(txseq);
+		long replicaTxseq = this.embeddedReplicaManager.txseq;
+		if (replicaTxseq >= txseq) {
+			return true;
+		}
+		if (maxLag > 0 && txseq - replicaTxseq <= maxLag) {
+			return true;
+		}
+		if (maxStaleness > 0 && System.currentTimeMillis() - this.embeddedReplicaManager.caughtUpAt <= maxStaleness) {
+			return true;
+		}
+		if (this.replicaWaitTimeout > 0) {
+			// reading locally after a short wait is cheaper than a round trip to the server
+			return this.embeddedReplicaManager.awaitTxseq(txseq, this.replicaWaitTimeout);
+		}
+		// the replica may have caught up since its last refresh
+		this.embeddedReplicaManager.requestRefresh();
+		return false;
 	}
 
 	@NotNull
@@ -178,16 +353,26 @@ public class HAConnection extends AbstractJdbcConnection {
 
 	@NotNull
 	private HAPreparedStatement prepareStatementImpl(String sql) throws SQLException {
-		return new HAPreparedStatement(this, sql, this.queryTimeout);
+		if (this.statementCache == null) {
+			return new HAPreparedStatement(this, sql, this.queryTimeout);
+		}
+		// every statement is a new object, only what is derived from the SQL is shared
+		HAPreparedStatement.ParsedSql parsed;
+		synchronized (this.statementCache) {
+			parsed = this.statementCache.computeIfAbsent(sql, HAPreparedStatement.ParsedSql::new);
+		}
+		return new HAPreparedStatement(this, parsed, this.queryTimeout);
 	}
 
 	@Override
 	public void close() throws SQLException {
 		client.close();
-		if (embeddedReplica != null) {
-			embeddedReplica.close();
-		}
 		this.closed = true;
+		if (this.statementCache != null) {
+			synchronized (this.statementCache) {
+				this.statementCache.clear();
+			}
+		}
 	}
 
 	@Override
@@ -209,15 +394,7 @@ public class HAConnection extends AbstractJdbcConnection {
 			throw new SQLException("catalog is empty");
 		}
 		getClient().setReplicationID(catalog);
-		if (this.embeddedReplica != null) {
-			this.embeddedReplica.close();
-		}
-		this.embeddedReplicaManager = null;
-		this.embeddedReplica = null;
 		this.embeddedReplicaManager = HAEmbeddedReplicasManager.getReplica(getClient().getReplicationID());
-		if (this.embeddedReplicaManager != null) {
-			this.embeddedReplica = this.embeddedReplicaManager.createConn();
-		}
 	}
 
 	@Override
@@ -26,4 +26,19 @@ public class HAConstants {
 	public static final String CONNECTION_PROPERTY_REPLICATION_URL = "replicationURL";
 	public static final String CONNECTION_PROPERTY_REPLICATION_STREAM = "replicationStream";
 	public static final String CONNECTION_PROPERTY_REPLICATION_DURABLE = "replicationDurable";
+	public static final String CONNECTION_PROPERTY_MAX_PENDING_REQUESTS = "maxPendingRequests";
+	public static final String CONNECTION_PROPERTY_CURSOR_FETCH = "cursorFetch";
+	public static final String CONNECTION_PROPERTY_LAZY_DECODE = "lazyDecode";
+	public static final String CONNECTION_PROPERTY_REPLICA_WAIT_TIMEOUT = "replicaWaitTimeout";
+	public static final String CONNECTION_PROPERTY_MAX_REPLICA_LAG = "maxReplicaLag";
+	public static final String CONNECTION_PROPERTY_MAX_REPLICA_STALENESS = "maxReplicaStaleness";
+	public static final String CONNECTION_PROPERTY_REPLICA_LOAD_PARALLELISM = "replicaLoadParallelism";
+	public static final String CONNECTION_PROPERTY_REPLICA_LOAD_BACKGROUND = "replicaLoadBackground";
+	public static final String CONNECTION_PROPERTY_REPLICA_LAZY_ACTIVATION = "replicaLazyActivation";
+	public static final String CONNECTION_PROPERTY_REPLICA_IDLE_TIMEOUT = "replicaIdleTimeout";
+	public static final String CONNECTION_PROPERTY_REPLICA_BOOTSTRAP = "replicaBootstrap";
+	public static final String CONNECTION_PROPERTY_RESULT_CACHE_SIZE = "resultCacheSize";
+	public static final String CONNECTION_PROPERTY_RESULT_CACHE_TTL = "resultCacheTtl";
+	public static final String CONNECTION_PROPERTY_METADATA_CHECK_INTERVAL = "metadataCheckInterval";
+	public static final String CONNECTION_PROPERTY_PREP_STMT_CACHE_SIZE = "prepStmtCacheSize";
 }
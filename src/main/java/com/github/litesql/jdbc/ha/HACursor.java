@@ -0,0 +1,96 @@
+package com.github.litesql.jdbc.ha;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+import com.github.litesql.jdbc.ha.client.HAClient;
+import com.github.litesql.jdbc.ha.client.HAExecutionResult;
+
+/**
+ * Reads a query result in pages of {@code fetchSize} rows by appending
+ * {@code LIMIT/OFFSET} to the query. The next page is requested as soon as a
+ * full page arrives, so at most two pages are held in memory while the caller
+ * iterates.
+ *
+ * The server has no cursors and the driver cannot derive a key to page on, so
+ * every page runs the query again and skips the rows of the previous pages:
+ * paging bounds memory, not server work. Pages are read by separate
+ * statements; the query needs an ORDER BY on a unique key for rows not to be
+ * repeated or missed, and must run inside a transaction to see a consistent
+ * view of the data.
+ */
+class HACursor {
+
+	private static final Pattern LIMIT_PATTERN = Pattern.compile("\\blimit\\b", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * Sends the query of a page.
+	 */
+	@FunctionalInterface
+	interface PageSource {
+		CompletableFuture<HAExecutionResult> send(String sql, Map<Object, Object> parameters);
+	}
+
+	private final PageSource source;
+	private final String sql;
+	private final Map<Object, Object> parameters;
+	private final int fetchSize;
+
+	private long offset;
+	private CompletableFuture<HAExecutionResult> nextPage;
+
+	HACursor(HAClient client, String sql, Map<Object, Object> parameters, int fetchSize) {
+		this(client::executeQueryAsync, sql, parameters, fetchSize);
+	}
+
+	HACursor(PageSource source, String sql, Map<Object, Object> parameters, int fetchSize) {
+		this.source = source;
+		this.sql = stripTerminator(sql);
+		this.parameters = parameters == null ? null : new LinkedHashMap<>(parameters);
+		this.fetchSize = fetchSize;
+		this.nextPage = requestPage();
+	}
+
+	/**
+	 * @return the next page, or {@code null} when the result is exhausted.
+	 */
+	HAExecutionResult next(int timeout) throws SQLException {
+		if (this.nextPage == null) {
+			return null;
+		}
+		HAExecutionResult page = HAClient.await(this.nextPage, timeout);
+		if (page.getRowCount() < this.fetchSize) {
+			this.nextPage = null;
+		} else {
+			this.nextPage = requestPage();
+		}
+		return page;
+	}
+
+	/**
+	 * @return whether the query can be paged: a query with its own LIMIT is read
+	 *         at once.
+	 */
+	static boolean canPage(String sql) {
+		return !LIMIT_PATTERN.matcher(sql).find();
+	}
+
+	private CompletableFuture<HAExecutionResult> requestPage() {
+		// appended instead of wrapping the query, which would rename duplicate
+		// column labels; the line break ends a trailing comment
+		String pageSql = this.sql + "\nLIMIT " + this.fetchSize + " OFFSET " + this.offset;
+		this.offset += this.fetchSize;
+		return this.source.send(pageSql, this.parameters);
+	}
+
+	private static String stripTerminator(String sql) {
+		String stripped = sql.trim();
+		while (stripped.endsWith(";")) {
+			stripped = stripped.substring(0, stripped.length() - 1).trim();
+		}
+		return stripped;
+	}
+}
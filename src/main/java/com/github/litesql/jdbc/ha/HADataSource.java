@@ -115,8 +115,119 @@ public class HADataSource implements DataSource {
 		properties.put(HAConstants.CONNECTION_PROPERTY_REPLICATION_DURABLE, durable);
 	}
 
+	public void setReplicaLoadParallelism(int parallelism) {
+		properties.put(HAConstants.CONNECTION_PROPERTY_REPLICA_LOAD_PARALLELISM, String.valueOf(parallelism));
+	}
+
+	/**
+	 * @param background open embedded replicas in the background instead of
+	 *                   during the first connection. Queries go to the HA server
+	 *                   until their replica is open.
+	 */
+	public void setReplicaLoadBackground(boolean background) {
+		properties.put(HAConstants.CONNECTION_PROPERTY_REPLICA_LOAD_BACKGROUND, String.valueOf(background));
+	}
+
+	/**
+	 * @param lazyActivation open an embedded replica only when a connection first
+	 *                       targets its replication ID.
+	 */
+	public void setReplicaLazyActivation(boolean lazyActivation) {
+		properties.put(HAConstants.CONNECTION_PROPERTY_REPLICA_LAZY_ACTIVATION, String.valueOf(lazyActivation));
+	}
+
+	/**
+	 * @param idleTimeout milliseconds after which a lazily activated replica that
+	 *                    is not used is closed, 0 to keep it open.
+	 */
+	public void setReplicaIdleTimeout(long idleTimeout) {
+		properties.put(HAConstants.CONNECTION_PROPERTY_REPLICA_IDLE_TIMEOUT, String.valueOf(idleTimeout));
+	}
+
+	/**
+	 * @param replicationIDs comma separated replication IDs whose latest snapshot
+	 *                       is downloaded to the embedded replicas directory when
+	 *                       missing, or {@code all} for every database of the
+	 *                       server.
+	 */
+	public void setReplicaBootstrap(String replicationIDs) {
+		properties.put(HAConstants.CONNECTION_PROPERTY_REPLICA_BOOTSTRAP, replicationIDs);
+	}
+
+	/**
+	 * @param resultCacheSize size in bytes of the driver-wide cache of SELECT
+	 *                        results, 0 to disable it.
+	 */
+	public void setResultCacheSize(long resultCacheSize) {
+		properties.put(HAConstants.CONNECTION_PROPERTY_RESULT_CACHE_SIZE, String.valueOf(resultCacheSize));
+	}
+
+	/**
+	 * @param resultCacheTtl maximum age in milliseconds of a cached result.
+	 */
+	public void setResultCacheTtl(long resultCacheTtl) {
+		properties.put(HAConstants.CONNECTION_PROPERTY_RESULT_CACHE_TTL, String.valueOf(resultCacheTtl));
+	}
+
+	/**
+	 * @param metadataCheckInterval milliseconds during which cached schema
+	 *                              metadata is used without checking
+	 *                              {@code PRAGMA schema_version}.
+	 */
+	public void setMetadataCheckInterval(int metadataCheckInterval) {
+		properties.put(HAConstants.CONNECTION_PROPERTY_METADATA_CHECK_INTERVAL, String.valueOf(metadataCheckInterval));
+	}
+
+	/**
+	 * @param prepStmtCacheSize number of SQL strings whose parsed form a
+	 *                          connection keeps for prepareStatement, 0 to
+	 *                          disable the cache.
+	 */
+	public void setPrepStmtCacheSize(int prepStmtCacheSize) {
+		properties.put(HAConstants.CONNECTION_PROPERTY_PREP_STMT_CACHE_SIZE, String.valueOf(prepStmtCacheSize));
+	}
+
 	public void setTimeout(int seconds) {
 		properties.put(HAConstants.CONNECTION_PROPERTY_TIMEOUT, String.valueOf(seconds));
 	}
 
+	public void setMaxPendingRequests(int maxPendingRequests) {
+		properties.put(HAConstants.CONNECTION_PROPERTY_MAX_PENDING_REQUESTS, String.valueOf(maxPendingRequests));
+	}
+
+	public void setCursorFetch(boolean cursorFetch) {
+		properties.put(HAConstants.CONNECTION_PROPERTY_CURSOR_FETCH, String.valueOf(cursorFetch));
+	}
+
+	public void setLazyDecode(boolean lazyDecode) {
+		properties.put(HAConstants.CONNECTION_PROPERTY_LAZY_DECODE, String.valueOf(lazyDecode));
+	}
+
+	/**
+	 * @param replicaWaitTimeout milliseconds a SELECT waits for the embedded
+	 *                           replica to catch up with the connection before it
+	 *                           is sent to the server, 0 to never wait.
+	 */
+	public void setReplicaWaitTimeout(long replicaWaitTimeout) {
+		properties.put(HAConstants.CONNECTION_PROPERTY_REPLICA_WAIT_TIMEOUT, String.valueOf(replicaWaitTimeout));
+	}
+
+	/**
+	 * @param maxReplicaLag number of transactions the embedded replica may be
+	 *                      behind the connection and still serve SELECTs.
+	 */
+	public void setMaxReplicaLag(long maxReplicaLag) {
+		properties.put(HAConstants.CONNECTION_PROPERTY_MAX_REPLICA_LAG, String.valueOf(maxReplicaLag));
+	}
+
+	/**
+	 * @param maxReplicaStaleness milliseconds since the embedded replica was
+	 *                            last seen caught up with the server, within
+	 *                            which it may serve SELECTs while behind
+	 *                            the connection.
+	 */
+	public void setMaxReplicaStaleness(long maxReplicaStaleness) {
+		properties.put(HAConstants.CONNECTION_PROPERTY_MAX_REPLICA_STALENESS, String.valueOf(maxReplicaStaleness));
+	}
+
 }
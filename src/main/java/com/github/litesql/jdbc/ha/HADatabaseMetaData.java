@@ -1,13 +1,12 @@
 package com.github.litesql.jdbc.ha;
 
-import java.sql.Connection;
 import java.sql.DatabaseMetaData;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,15 +17,40 @@ import org.jkiss.code.NotNull;
 import org.jkiss.utils.CommonUtils;
 
 import com.dbeaver.jdbc.model.AbstractJdbcDatabaseMetaData;
+import com.github.litesql.jdbc.ha.client.HAExecutionResult;
+import com.github.litesql.jdbc.ha.client.HAMetadataCache;
 
 /**
  * Queries related to keys and indexes were taken from Xerial SQLite driver
  * (https://github.com/xerial/sqlite-jdbc)
+ *
+ * Results are built from the schema cached by {@link HAMetadataCache}, so that
+ * tools inspecting every table do not send a query per table.
  */
 public class HADatabaseMetaData extends AbstractJdbcDatabaseMetaData<HAConnection> {
 
 	private static final Pattern VERSION_PATTERN = Pattern.compile("(\\w+)\\s+([0-9.]+)\\s+(.+)");
 
+	private static final List<String> TABLE_COLUMNS = List.of("TABLE_CAT", "TABLE_SCHEM", "TABLE_NAME",
+			"TABLE_TYPE", "REMARKS", "TYPE_CAT", "TYPE_SCHEM", "TYPE_NAME");
+
+	private static final List<String> COLUMN_COLUMNS = List.of("TABLE_CAT", "TABLE_SCHEM", "TABLE_NAME",
+			"COLUMN_NAME", "DATA_TYPE", "TYPE_NAME", "COLUMN_SIZE", "COLUMN_SIZE", "BUFFER_LENGTH", "DECIMAL_DIGITS",
+			"NULLABLE", "REMARKS", "COLUMN_DEF", "SQL_DATA_TYPE", "SQL_DATETIME_SUB", "CHAR_OCTET_LENGTH",
+			"ORDINAL_POSITION", "IS_NULLABLE", "SCOPE_CATALOG", "SCOPE_SCHEMA", "SCOPE_TABLE", "SOURCE_DATA_TYPE",
+			"IS_AUTOINCREMENT", "IS_GENERATEDCOLUMN");
+
+	private static final List<String> PRIMARY_KEY_COLUMNS = List.of("TABLE_CAT", "TABLE_SCHEM", "TABLE_NAME",
+			"COLUMN_NAME", "KEY_SEQ", "PK_NAME");
+
+	private static final List<String> INDEX_COLUMNS = List.of("TABLE_CAT", "TABLE_SCHEM", "TABLE_NAME",
+			"NON_UNIQUE", "INDEX_QUALIFIER", "INDEX_NAME", "TYPE", "ORDINAL_POSITION", "COLUMN_NAME", "ASC_OR_DESC",
+			"CARDINALITY", "PAGES", "FILTER_CONDITION");
+
+	private static final List<String> KEY_COLUMNS = List.of("PKTABLE_CAT", "PKTABLE_SCHEM", "PKTABLE_NAME",
+			"PKCOLUMN_NAME", "FKTABLE_CAT", "FKTABLE_SCHEM", "FKTABLE_NAME", "FKCOLUMN_NAME", "KEY_SEQ", "UPDATE_RULE",
+			"DELETE_RULE", "FK_NAME", "PK_NAME", "DEFERRABILITY");
+
 	private HAConnection connection;
 
 	private String serverVersion = "1.0.0";
@@ -85,12 +109,14 @@ public class HADatabaseMetaData extends AbstractJdbcDatabaseMetaData<HAConnectio
 		if (catalog != null && !catalog.isEmpty()) {
 			connection.setCatalog(catalog);
 		}
-		try (PreparedStatement dbStat = connection.prepareStatement("SELECT " + HAUtils.quote(catalog)
-				+ " as TABLE_CAT, NULL AS TABLE_SCHEM," + "name AS TABLE_NAME,type as TABLE_TYPE, "
-				+ "NULL AS REMARKS, NULL AS TYPE_CAT, NULL AS TYPE_SCHEM, NULL AS TYPE_NAME "
-				+ "FROM sqlite_master WHERE type='table'")) {
-			return dbStat.executeQuery();
+		List<Object[]> rows = new ArrayList<>();
+		for (HAMetadataCache.Table table : connection.getSchemaSnapshot().getTables()) {
+			if ("table".equals(table.getType())) {
+				rows.add(new Object[] { String.valueOf(catalog), null, table.getName(), table.getType(), null, null,
+						null, null });
+			}
 		}
+		return toResultSet(TABLE_COLUMNS, rows);
 	}
 
 	@Override
@@ -103,16 +129,20 @@ public class HADatabaseMetaData extends AbstractJdbcDatabaseMetaData<HAConnectio
 		if (catalog != null && !catalog.isEmpty()) {
 			connection.setCatalog(catalog);
 		}
-		return executeQuery("WITH all_tables AS (SELECT name AS tn FROM sqlite_master WHERE type = 'table'"
-				+ (tableName == null ? "" : " and name=" + HAUtils.quote(tableName)) + ") \n" + "SELECT "
-				+ HAUtils.quote(catalog) + " as TABLE_CAT, " + "NULL AS TABLE_SCHEM, " + "at.tn as TABLE_NAME,\n"
-				+ "pti.name as COLUMN_NAME," + Types.VARCHAR + " AS DATA_TYPE," + "pti.type AS TYPE_NAME,"
-				+ "0 AS COLUMN_SIZE," + "0 as COLUMN_SIZE," + "0 as BUFFER_LENGTH," + "0 as DECIMAL_DIGITS,\n"
-				+ columnNullable + " as NULLABLE," + "NULL as REMARKS," + "NULL as COLUMN_DEF," + "0 as SQL_DATA_TYPE,"
-				+ "0 as SQL_DATETIME_SUB," + "0 as CHAR_OCTET_LENGTH," + "pti.cid as ORDINAL_POSITION,"
-				+ "'' as IS_NULLABLE," + "NULL as SCOPE_CATALOG," + "NULL as SCOPE_SCHEMA," + "NULL as SCOPE_TABLE,"
-				+ "NULL as SOURCE_DATA_TYPE," + "'' as IS_AUTOINCREMENT," + "'' as IS_GENERATEDCOLUMN\n"
-				+ "FROM all_tables at INNER JOIN pragma_table_info(at.tn) pti\n" + "ORDER BY TABLE_NAME");
+		List<Object[]> rows = new ArrayList<>();
+		for (HAMetadataCache.Table table : connection.getSchemaSnapshot().getTables()) {
+			if (!"table".equals(table.getType()) || (tableName != null && !tableName.equals(table.getName()))) {
+				continue;
+			}
+			List<HAMetadataCache.Column> columns = table.getColumns();
+			for (int i = 0; i < columns.size(); i++) {
+				HAMetadataCache.Column column = columns.get(i);
+				rows.add(new Object[] { String.valueOf(catalog), null, table.getName(), column.getName(),
+						Types.VARCHAR, column.getType(), 0, 0, 0, 0, columnNullable, null, null, 0, 0, 0, i, "", null,
+						null, null, null, "", "" });
+			}
+		}
+		return toResultSet(COLUMN_COLUMNS, rows);
 	}
 
 	@Override
@@ -121,186 +151,82 @@ public class HADatabaseMetaData extends AbstractJdbcDatabaseMetaData<HAConnectio
 			connection.setCatalog(catalog);
 		}
 		String table = tableName;
-		PrimaryKeyFinder pkFinder = new PrimaryKeyFinder(connection, table);
+		PrimaryKeyFinder pkFinder = new PrimaryKeyFinder(connection.getSchemaSnapshot(), table);
 		String[] columns = pkFinder.getColumns();
 
-		StringBuilder sql = new StringBuilder();
-		sql.append("select ").append(HAUtils.quote(catalog)).append(" as TABLE_CAT, null as TABLE_SCHEM, '")
-				.append(HAUtils.escape(table))
-				.append("' as TABLE_NAME, cn as COLUMN_NAME, ks as KEY_SEQ, pk as PK_NAME from (");
-
-		if (columns == null) {
-			sql.append("select null as cn, null as pk, 0 as ks) limit 0;");
-			return executeQuery(sql.toString());
-		}
-
-		String pkName = pkFinder.getName();
-		if (pkName != null) {
-			pkName = "'" + pkName + "'";
-		}
-
-		for (int i = 0; i < columns.length; i++) {
-			if (i > 0)
-				sql.append(" union ");
-			sql.append("select ").append(pkName).append(" as pk, '").append(HAUtils.escape(HAUtils.unquote(columns[i])))
-					.append("' as cn, ").append(i + 1).append(" as ks");
-		}
-
-		sql.append(") order by cn;");
-		return executeQuery(sql.toString());
-	}
-
-	private static class IndexInfo {
-		String indexName;
-		int indexId;
-
-		public IndexInfo(String indexName, int indexId) {
-			this.indexName = indexName;
-			this.indexId = indexId;
+		List<Object[]> rows = new ArrayList<>();
+		if (columns != null) {
+			for (int i = 0; i < columns.length; i++) {
+				rows.add(new Object[] { String.valueOf(catalog), null, table, HAUtils.unquote(columns[i]), i + 1,
+						pkFinder.getName() });
+			}
+			rows.sort(Comparator.comparing(row -> (String) row[3]));
 		}
+		return toResultSet(PRIMARY_KEY_COLUMNS, rows);
 	}
 
 	@Override
 	public ResultSet getIndexInfo(String catalog, String schema, String table, boolean unique, boolean approximate)
 			throws SQLException {
-		{
-			if (catalog != null && !catalog.isEmpty()) {
-				connection.setCatalog(catalog);
-			}
-			StringBuilder sql = new StringBuilder();
-
-			// define the column header
-			// this is from the JDBC spec, it is part of the driver protocol
-			sql.append("select ").append(HAUtils.quote(catalog)).append(" as TABLE_CAT, null as TABLE_SCHEM, '")
-					.append(HAUtils.escape(table))
-					.append("' as TABLE_NAME, un as NON_UNIQUE, null as INDEX_QUALIFIER, n as INDEX_NAME, ")
-					.append(Integer.toString(DatabaseMetaData.tableIndexOther))
-					.append(" as TYPE, op as ORDINAL_POSITION, ")
-					.append("cn as COLUMN_NAME, null as ASC_OR_DESC, 0 as CARDINALITY, 0 as PAGES, null as FILTER_CONDITION from (");
-
-			// this always returns a result set now, previously threw exception
-			List<IndexInfo> indexList = new ArrayList<>();
-			try (ResultSet rs = executeQuery("pragma index_list('" + HAUtils.escape(table) + "')")) {
-				while (rs.next()) {
-					IndexInfo indexInfo = new IndexInfo(rs.getString(2), rs.getInt(3));
-					indexList.add(indexInfo);
-				}
-			}
-			if (indexList.isEmpty()) {
-				// if pragma index_list() returns no information, use this null block
-				sql.append("select null as un, null as n, null as op, null as cn) limit 0;");
-				return executeQuery(sql.toString());
-			} else {
-				// loop over results from pragma call, getting specific info for each index
-				List<String> unionAll = new ArrayList<>();
-				for (IndexInfo currentIndex : indexList) {
-					String indexName = currentIndex.indexName;
-					try (ResultSet rs = executeQuery("pragma index_info('" + HAUtils.escape(indexName) + "')")) {
-						while (rs.next()) {
-							StringBuilder sqlRow = new StringBuilder();
-
-							String colName = rs.getString(3);
-							sqlRow.append("select ").append(1 - currentIndex.indexId).append(" as un,'")
-									.append(HAUtils.escape(indexName)).append("' as n,").append(rs.getInt(1) + 1)
-									.append(" as op,");
-							if (colName == null) { // expression index
-								sqlRow.append("null");
-							} else {
-								sqlRow.append("'").append(HAUtils.escape(colName)).append("'");
-							}
-							sqlRow.append(" as cn");
-
-							unionAll.add(sqlRow.toString());
-						}
-					}
+		if (catalog != null && !catalog.isEmpty()) {
+			connection.setCatalog(catalog);
+		}
+		List<Object[]> rows = new ArrayList<>();
+		HAMetadataCache.Table info = connection.getSchemaSnapshot().getTable(table);
+		if (info != null) {
+			for (HAMetadataCache.Index index : info.getIndexes()) {
+				List<String> columns = index.getColumns();
+				for (int i = 0; i < columns.size(); i++) {
+					// the column name is null for an expression index
+					rows.add(new Object[] { String.valueOf(catalog), null, table, index.isUnique() ? 0 : 1, null,
+							index.getName(), DatabaseMetaData.tableIndexOther, i + 1, columns.get(i), null, 0, 0,
+							null });
 				}
-
-				String sqlBlock = String.join(" union all ", unionAll);
-				sql.append(sqlBlock).append(");");
-				return executeQuery(sql.toString());
 			}
 		}
+		return toResultSet(INDEX_COLUMNS, rows);
 	}
 
 	@Override
 	public ResultSet getImportedKeys(String catalog, String schema, String table) throws SQLException {
-		{
-			if (catalog != null && !catalog.isEmpty()) {
-				connection.setCatalog(catalog);
-			}
-			StringBuilder sql = new StringBuilder();
-
-			sql.append("select ").append(HAUtils.quote(catalog)).append(" as PKTABLE_CAT, ")
-					.append("NULL as PKTABLE_SCHEM, ").append("ptn as PKTABLE_NAME, pcn as PKCOLUMN_NAME, ")
-					.append(HAUtils.quote(catalog)).append(" as FKTABLE_CAT, ").append(HAUtils.quote(schema))
-					.append(" as FKTABLE_SCHEM, ").append(HAUtils.quote(table)).append(" as FKTABLE_NAME, ")
-					.append("fcn as FKCOLUMN_NAME, ks as KEY_SEQ, ur as UPDATE_RULE, dr as DELETE_RULE, fkn as FK_NAME, pkn as PK_NAME, ")
-					.append(DatabaseMetaData.importedKeyInitiallyDeferred).append(" as DEFERRABILITY from (");
-
-			// Use a try catch block to avoid "query does not return ResultSet" error
-			try (ResultSet rs = executeQuery("pragma foreign_key_list('" + HAUtils.escape(table) + "')")) {
-
-				final ImportedKeyFinder impFkFinder = new ImportedKeyFinder(connection, table);
-				List<ImportedKeyFinder.ForeignKey> fkNames = impFkFinder.getFkList();
-
-				int i = 0;
-				for (; rs.next(); i++) {
-					int keySeq = rs.getInt(2) + 1;
-					int keyId = rs.getInt(1);
-					String PKTabName = rs.getString(3);
-					String FKColName = rs.getString(4);
-					String PKColName = rs.getString(5);
-
-					String pkName = null;
-					try {
-						PrimaryKeyFinder pkFinder = new PrimaryKeyFinder(connection, PKTabName);
-						pkName = pkFinder.getName();
-						if (PKColName == null) {
-							PKColName = pkFinder.getColumns()[0];
-						}
-					} catch (SQLException ignored) {
+		if (catalog != null && !catalog.isEmpty()) {
+			connection.setCatalog(catalog);
+		}
+		HAMetadataCache.Schema dbSchema = connection.getSchemaSnapshot();
+		ImportedKeyFinder impFkFinder = new ImportedKeyFinder(dbSchema, table);
+		List<ImportedKeyFinder.ForeignKey> fkNames = impFkFinder.getFkList();
+
+		List<Object[]> rows = new ArrayList<>();
+		HAMetadataCache.Table info = dbSchema.getTable(table);
+		if (info != null) {
+			for (HAMetadataCache.ForeignKey foreignKey : info.getForeignKeys()) {
+				String PKTabName = foreignKey.getTable();
+				String PKColName = foreignKey.getTo();
+
+				String pkName = null;
+				try {
+					PrimaryKeyFinder pkFinder = new PrimaryKeyFinder(dbSchema, PKTabName);
+					pkName = pkFinder.getName();
+					if (PKColName == null && pkFinder.getColumns() != null) {
+						PKColName = pkFinder.getColumns()[0];
 					}
+				} catch (SQLException ignored) {
+				}
 
-					String updateRule = rs.getString(6);
-					String deleteRule = rs.getString(7);
+				String fkName = null;
+				if (fkNames.size() > foreignKey.getId())
+					fkName = fkNames.get(foreignKey.getId()).getFkName();
 
-					if (i > 0) {
-						sql.append(" union all ");
-					}
-
-					String fkName = null;
-					if (fkNames.size() > keyId)
-						fkName = fkNames.get(keyId).getFkName();
-
-					sql.append("select ").append(keySeq).append(" as ks,").append("'").append(HAUtils.escape(PKTabName))
-							.append("' as ptn, '").append(HAUtils.escape(FKColName)).append("' as fcn, '")
-							.append(HAUtils.escape(PKColName)).append("' as pcn,").append("case '")
-							.append(HAUtils.escape(updateRule)).append("'").append(" when 'NO ACTION' then ")
-							.append(DatabaseMetaData.importedKeyNoAction).append(" when 'CASCADE' then ")
-							.append(DatabaseMetaData.importedKeyCascade).append(" when 'RESTRICT' then ")
-							.append(DatabaseMetaData.importedKeyRestrict).append(" when 'SET NULL' then ")
-							.append(DatabaseMetaData.importedKeySetNull).append(" when 'SET DEFAULT' then ")
-							.append(DatabaseMetaData.importedKeySetDefault).append(" end as ur, ").append("case '")
-							.append(HAUtils.escape(deleteRule)).append("'").append(" when 'NO ACTION' then ")
-							.append(DatabaseMetaData.importedKeyNoAction).append(" when 'CASCADE' then ")
-							.append(DatabaseMetaData.importedKeyCascade).append(" when 'RESTRICT' then ")
-							.append(DatabaseMetaData.importedKeyRestrict).append(" when 'SET NULL' then ")
-							.append(DatabaseMetaData.importedKeySetNull).append(" when 'SET DEFAULT' then ")
-							.append(DatabaseMetaData.importedKeySetDefault).append(" end as dr, ")
-							.append(fkName == null ? "''" : HAUtils.quote(fkName)).append(" as fkn, ")
-							.append(pkName == null ? "''" : HAUtils.quote(pkName)).append(" as pkn");
-				}
-				if (i == 0) {
-					sql.append("select -1 as ks, '' as ptn, '' as fcn, '' as pcn, ")
-							.append(DatabaseMetaData.importedKeyNoAction).append(" as ur, ")
-							.append(DatabaseMetaData.importedKeyNoAction).append(" as dr, ").append(" '' as fkn, ")
-							.append(" '' as pkn ").append(") limit 0;");
-				} else {
-					sql.append(") ORDER BY PKTABLE_CAT, PKTABLE_SCHEM, PKTABLE_NAME, KEY_SEQ");
-				}
+				rows.add(new Object[] { String.valueOf(catalog), null, PKTabName, PKColName, String.valueOf(catalog),
+						String.valueOf(schema), String.valueOf(table), foreignKey.getFrom(), foreignKey.getSeq() + 1,
+						RULE_MAP.get(foreignKey.getOnUpdate()), RULE_MAP.get(foreignKey.getOnDelete()),
+						fkName == null ? "" : fkName, pkName == null ? "" : pkName,
+						DatabaseMetaData.importedKeyInitiallyDeferred });
 			}
-			return executeQuery(sql.toString());
+			rows.sort(Comparator.comparing((Object[] row) -> (String) row[2])
+					.thenComparingInt(row -> (Integer) row[8]));
 		}
+		return toResultSet(KEY_COLUMNS, rows);
 	}
 
 	private static final Map<String, Integer> RULE_MAP = new HashMap<>();
@@ -318,36 +244,21 @@ public class HADatabaseMetaData extends AbstractJdbcDatabaseMetaData<HAConnectio
 		if (catalog != null && !catalog.isEmpty()) {
 			connection.setCatalog(catalog);
 		}
-		PrimaryKeyFinder pkFinder = new PrimaryKeyFinder(connection, table);
+		HAMetadataCache.Schema dbSchema = connection.getSchemaSnapshot();
+		PrimaryKeyFinder pkFinder = new PrimaryKeyFinder(dbSchema, table);
 		String[] pkColumns = pkFinder.getColumns();
 
-		catalog = (catalog != null) ? HAUtils.quote(catalog) : null;
-		schema = (schema != null) ? HAUtils.quote(schema) : null;
-
-		StringBuilder exportedKeysQuery = new StringBuilder();
-
-		String target = null;
-		int count = 0;
+		List<Object[]> rows = new ArrayList<>();
+		HAMetadataCache.Table info = dbSchema.getTable(table);
+		// get the correct case as in the database (not uppercase nor lowercase)
+		String target = info != null && "table".equals(info.getType()) ? info.getName() : null;
 		if (pkColumns != null) {
-			// retrieve table list
-			ArrayList<String> tableList;
-			try (ResultSet rs = executeQuery("select name from sqlite_schema where type = 'table'")) {
-				tableList = new ArrayList<>();
-
-				while (rs.next()) {
-					String tblname = rs.getString(1);
-					tableList.add(tblname);
-					if (tblname.equalsIgnoreCase(table)) {
-						// get the correct case as in the database
-						// (not uppercase nor lowercase)
-						target = tblname;
-					}
-				}
-			}
-
 			// find imported keys for each table
-			for (String tbl : tableList) {
-				final ImportedKeyFinder impFkFinder = new ImportedKeyFinder(connection, tbl);
+			for (HAMetadataCache.Table tbl : dbSchema.getTables()) {
+				if (!"table".equals(tbl.getType())) {
+					continue;
+				}
+				final ImportedKeyFinder impFkFinder = new ImportedKeyFinder(dbSchema, tbl.getName());
 				List<ImportedKeyFinder.ForeignKey> fkNames = impFkFinder.getFkList();
 
 				for (ImportedKeyFinder.ForeignKey foreignKey : fkNames) {
@@ -372,48 +283,19 @@ public class HADatabaseMetaData extends AbstractJdbcDatabaseMetaData<HAConnectio
 							}
 						}
 						String pkName = (usePkName && pkFinder.getName() != null) ? pkFinder.getName() : "";
-
-						exportedKeysQuery.append(count > 0 ? " union all select " : "select ").append(keySeq)
-								.append(" as ks, '").append(HAUtils.escape(tbl)).append("' as fkt, '")
-								.append(HAUtils.escape(fkColName)).append("' as fcn, '")
-								.append(HAUtils.escape(pkColName)).append("' as pcn, '").append(HAUtils.escape(pkName))
-								.append("' as pkn, ").append(RULE_MAP.get(foreignKey.onUpdate)).append(" as ur, ")
-								.append(RULE_MAP.get(foreignKey.onDelete)).append(" as dr, ");
-
 						String fkName = foreignKey.getFkName();
 
-						if (fkName != null) {
-							exportedKeysQuery.append("'").append(HAUtils.escape(fkName)).append("' as fkn");
-						} else {
-							exportedKeysQuery.append("'' as fkn");
-						}
-
-						count++;
+						rows.add(new Object[] { catalog, schema, String.valueOf(target), pkColName, catalog, schema,
+								tbl.getName(), fkColName, keySeq, RULE_MAP.get(foreignKey.onUpdate),
+								RULE_MAP.get(foreignKey.onDelete), fkName == null ? "" : fkName, pkName,
+								DatabaseMetaData.importedKeyInitiallyDeferred });
 					}
 				}
 			}
+			rows.sort(Comparator.comparing((Object[] row) -> (String) row[6])
+					.thenComparingInt(row -> (Integer) row[8]));
 		}
-
-		boolean hasImportedKey = (count > 0);
-		StringBuilder sql = new StringBuilder(512);
-		sql.append("select ").append(catalog).append(" as PKTABLE_CAT, ").append(schema).append(" as PKTABLE_SCHEM, ")
-				.append(HAUtils.quote(target)).append(" as PKTABLE_NAME, ").append(hasImportedKey ? "pcn" : "''")
-				.append(" as PKCOLUMN_NAME, ").append(catalog).append(" as FKTABLE_CAT, ").append(schema)
-				.append(" as FKTABLE_SCHEM, ").append(hasImportedKey ? "fkt" : "''").append(" as FKTABLE_NAME, ")
-				.append(hasImportedKey ? "fcn" : "''").append(" as FKCOLUMN_NAME, ")
-				.append(hasImportedKey ? "ks" : "-1").append(" as KEY_SEQ, ").append(hasImportedKey ? "ur" : "3")
-				.append(" as UPDATE_RULE, ").append(hasImportedKey ? "dr" : "3").append(" as DELETE_RULE, ")
-				.append(hasImportedKey ? "fkn" : "''").append(" as FK_NAME, ").append(hasImportedKey ? "pkn" : "''")
-				.append(" as PK_NAME, ").append(DatabaseMetaData.importedKeyInitiallyDeferred)
-				.append(" as DEFERRABILITY ");
-
-		if (hasImportedKey) {
-			sql.append("from (").append(exportedKeysQuery)
-					.append(") ORDER BY FKTABLE_CAT, FKTABLE_SCHEM, FKTABLE_NAME, KEY_SEQ");
-		} else {
-			sql.append("limit 0");
-		}
-		return executeQuery(sql.toString());
+		return toResultSet(KEY_COLUMNS, rows);
 	}
 
 	@Override
@@ -428,14 +310,7 @@ public class HADatabaseMetaData extends AbstractJdbcDatabaseMetaData<HAConnectio
 		if (parentCatalog != null && !parentCatalog.isEmpty()) {
 			connection.setCatalog(parentCatalog);
 		}
-
-		String query = "select " + HAUtils.quote(parentCatalog) + " as PKTABLE_CAT, " + HAUtils.quote(parentSchema)
-				+ " as PKTABLE_SCHEM, " + HAUtils.quote(parentTable) + " as PKTABLE_NAME, " + "'' as PKCOLUMN_NAME, "
-				+ HAUtils.quote(foreignCatalog) + " as FKTABLE_CAT, " + HAUtils.quote(foreignSchema)
-				+ " as FKTABLE_SCHEM, " + HAUtils.quote(foreignTable) + " as FKTABLE_NAME, "
-				+ "'' as FKCOLUMN_NAME, -1 as KEY_SEQ, 3 as UPDATE_RULE, 3 as DELETE_RULE, '' as FK_NAME, '' as PK_NAME, "
-				+ DatabaseMetaData.importedKeyInitiallyDeferred + " as DEFERRABILITY limit 0 ";
-		return executeQuery(query);
+		return toResultSet(KEY_COLUMNS, Collections.emptyList());
 	}
 
 	private static void verifySchemaParameters(String catalog, String schemaPattern) throws SQLException {
@@ -444,8 +319,13 @@ public class HADatabaseMetaData extends AbstractJdbcDatabaseMetaData<HAConnectio
 		}
 	}
 
-	private ResultSet executeQuery(String query) throws SQLException {
-		return HAUtils.executeQuery(connection, query);
+	/**
+	 * Metadata results are built from the cached schema instead of being queried.
+	 */
+	private ResultSet toResultSet(List<String> columns, List<Object[]> rows) throws SQLException {
+		try (HAStatement stmt = new HAStatement(connection, HAConstants.DEFAULT_TIMEOUT)) {
+			return new HAResultSet(stmt, new HAExecutionResult(columns, rows));
+		}
 	}
 
 	/**
@@ -465,7 +345,7 @@ public class HADatabaseMetaData extends AbstractJdbcDatabaseMetaData<HAConnectio
 		String pkName = null;
 		String[] pkColumns = null;
 
-		public PrimaryKeyFinder(Connection connection, String table) throws SQLException {
+		public PrimaryKeyFinder(HAMetadataCache.Schema schema, String table) throws SQLException {
 			this.table = table;
 
 			// specific handling for sqlite_schema and synonyms, so that
@@ -479,38 +359,33 @@ public class HADatabaseMetaData extends AbstractJdbcDatabaseMetaData<HAConnectio
 				throw new SQLException("Invalid table name: '" + this.table + "'");
 			}
 
-			try (ResultSet rs = HAUtils.executeQuery(connection, "select sql from sqlite_schema where" + " name like '"
-					+ HAUtils.escape(table) + "' and type in ('table', 'view')")) {
-
-				if (!rs.next()) {
-					throw new SQLException("Table not found: '" + table + "'");
-				}
+			HAMetadataCache.Table info = schema.getTable(table);
+			if (info == null) {
+				throw new SQLException("Table not found: '" + table + "'");
+			}
+			String sql = info.getSql() == null ? "" : info.getSql();
 
-				Matcher matcher = PK_NAMED_PATTERN.matcher(rs.getString(1));
+			Matcher matcher = PK_NAMED_PATTERN.matcher(sql);
+			if (matcher.find()) {
+				pkName = HAUtils.unquote(HAUtils.escape(matcher.group(1)));
+				pkColumns = matcher.group(2).split(",");
+			} else {
+				matcher = PK_UNNAMED_PATTERN.matcher(sql);
 				if (matcher.find()) {
-					pkName = HAUtils.unquote(HAUtils.escape(matcher.group(1)));
-					pkColumns = matcher.group(2).split(",");
-				} else {
-					matcher = PK_UNNAMED_PATTERN.matcher(rs.getString(1));
-					if (matcher.find()) {
-						pkColumns = matcher.group(1).split(",");
-					}
+					pkColumns = matcher.group(1).split(",");
 				}
+			}
 
-				if (pkColumns == null) {
-					try (ResultSet rs2 = HAUtils.executeQuery(connection,
-							"pragma table_info('" + HAUtils.escape(table) + "')")) {
-						while (rs2.next()) {
-							if (rs2.getBoolean(6))
-								pkColumns = new String[] { rs2.getString(2) };
-						}
-					}
+			if (pkColumns == null) {
+				for (HAMetadataCache.Column column : info.getColumns()) {
+					if (column.getPrimaryKey() > 0)
+						pkColumns = new String[] { column.getName() };
 				}
+			}
 
-				if (pkColumns != null) {
-					for (int i = 0; i < pkColumns.length; i++) {
-						pkColumns[i] = HAUtils.unquote(pkColumns[i]);
-					}
+			if (pkColumns != null) {
+				for (int i = 0; i < pkColumns.length; i++) {
+					pkColumns[i] = HAUtils.unquote(pkColumns[i]);
 				}
 			}
 		}
@@ -536,64 +411,50 @@ public class HADatabaseMetaData extends AbstractJdbcDatabaseMetaData<HAConnectio
 				"CONSTRAINT\\s*\"?([A-Za-z_][A-Za-z\\d_]*)?\"?\\s*FOREIGN\\s+KEY\\s*\\((.*?)\\)",
 				Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
 
-		private final Connection conn;
 		private final List<ForeignKey> fkList = new ArrayList<>();
 
-		public ImportedKeyFinder(Connection connection, String table) throws SQLException {
-			this.conn = connection;
+		public ImportedKeyFinder(HAMetadataCache.Schema schema, String table) throws SQLException {
 			if (table == null || table.trim().isEmpty()) {
 				throw new SQLException("Invalid table name: '" + table + "'");
 			}
+			HAMetadataCache.Table info = schema.getTable(table);
+			if (info == null) {
+				return;
+			}
 
-			List<String> fkNames = getForeignKeyNames(table);
-
-			try (ResultSet rs = HAUtils.executeQuery(connection,
-					"pragma foreign_key_list('" + HAUtils.escape(table.toLowerCase()) + "')")) {
-
-				int prevFkId = -1;
-				int count = 0;
-				ForeignKey fk = null;
-				while (rs.next()) {
-					int fkId = rs.getInt(1);
-					String pkTableName = rs.getString(3);
-					String fkColName = rs.getString(4);
-					String pkColName = rs.getString(5);
-					String onUpdate = rs.getString(6);
-					String onDelete = rs.getString(7);
-					String match = rs.getString(8);
-
-					String fkName = null;
-					if (fkNames.size() > count)
-						fkName = fkNames.get(count);
-
-					if (fkId != prevFkId) {
-						fk = new ForeignKey(fkName, pkTableName, table, onUpdate, onDelete, match);
-						fkList.add(fk);
-						prevFkId = fkId;
-						count++;
-					}
-					if (fk != null) {
-						fk.addColumnMapping(fkColName, pkColName);
-					}
+			List<String> fkNames = getForeignKeyNames(info.getSql());
+
+			int prevFkId = -1;
+			int count = 0;
+			ForeignKey fk = null;
+			for (HAMetadataCache.ForeignKey row : info.getForeignKeys()) {
+				int fkId = row.getId();
+
+				String fkName = null;
+				if (fkNames.size() > count)
+					fkName = fkNames.get(count);
+
+				if (fkId != prevFkId) {
+					fk = new ForeignKey(fkName, row.getTable(), table, row.getOnUpdate(), row.getOnDelete(),
+							row.getMatch());
+					fkList.add(fk);
+					prevFkId = fkId;
+					count++;
+				}
+				if (fk != null) {
+					fk.addColumnMapping(row.getFrom(), row.getTo());
 				}
 			}
 		}
 
-		private List<String> getForeignKeyNames(String tbl) throws SQLException {
+		private List<String> getForeignKeyNames(String sql) {
 			List<String> fkNames = new ArrayList<>();
-			if (tbl == null) {
+			if (sql == null) {
 				return fkNames;
 			}
-			try (ResultSet rs = HAUtils.executeQuery(conn,
-					"select sql from sqlite_schema where" + " name like '" + HAUtils.escape(tbl) + "'")) {
-
-				if (rs.next()) {
-					Matcher matcher = FK_NAMED_PATTERN.matcher(rs.getString(1));
-
-					while (matcher.find()) {
-						fkNames.add(matcher.group(1));
-					}
-				}
+			Matcher matcher = FK_NAMED_PATTERN.matcher(sql);
+			while (matcher.find()) {
+				fkNames.add(matcher.group(1));
 			}
 			Collections.reverse(fkNames);
 			return fkNames;
@@ -11,14 +11,18 @@ import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.DriverPropertyInfo;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.github.litesql.jdbc.ha.client.HAClient;
+
 public class HADriver implements Driver {
 
 	static {
@@ -71,7 +75,25 @@ public class HADriver implements Driver {
 
 		if (replicationURL != null && !replicationURL.isEmpty() && replicationDurable != null
 				&& !replicationDurable.isEmpty()) {
-			HAEmbeddedReplicasManager.load(replicationDir, replicationURL, replicationStream, replicationDurable);
+			String bootstrap = (String) props.get(HAConstants.CONNECTION_PROPERTY_REPLICA_BOOTSTRAP);
+			if (bootstrap != null && !bootstrap.trim().isEmpty()
+					&& !HAEmbeddedReplicasManager.isBootstrapped(replicationDir)) {
+				bootstrapReplicas(targetUrl, props, replicationDir, bootstrap);
+			}
+			if (HAUtils.getBooleanProperty(props, HAConstants.CONNECTION_PROPERTY_REPLICA_LAZY_ACTIVATION, false)) {
+				long idleTimeout = HAUtils.getLongProperty(props, HAConstants.CONNECTION_PROPERTY_REPLICA_IDLE_TIMEOUT,
+						0);
+				HAEmbeddedReplicasManager.loadLazily(replicationDir, replicationURL, replicationStream,
+						replicationDurable, idleTimeout);
+			} else {
+				int loadParallelism = HAUtils.getIntProperty(props,
+						HAConstants.CONNECTION_PROPERTY_REPLICA_LOAD_PARALLELISM,
+						HAEmbeddedReplicasManager.DEFAULT_LOAD_PARALLELISM);
+				boolean loadInBackground = HAUtils.getBooleanProperty(props,
+						HAConstants.CONNECTION_PROPERTY_REPLICA_LOAD_BACKGROUND, false);
+				HAEmbeddedReplicasManager.load(replicationDir, replicationURL, replicationStream, replicationDurable,
+						loadParallelism, loadInBackground);
+			}
 		}
 
 		int queryTimeout = 60;
@@ -86,6 +108,34 @@ public class HADriver implements Driver {
 		return new HAConnection(this, targetUrl, queryTimeout, props);
 	}
 
+	private void bootstrapReplicas(String url, Map<String, Object> props, String dir, String bootstrap)
+			throws SQLException {
+		List<String> replicationIDs = null;
+		if (!"all".equalsIgnoreCase(bootstrap.trim())) {
+			replicationIDs = new ArrayList<>();
+			for (String id : bootstrap.split(",")) {
+				if (!id.trim().isEmpty()) {
+					replicationIDs.add(id.trim());
+				}
+			}
+		}
+		String token = props.get("password") == null ? null : props.get("password").toString();
+		boolean enableSSL = Boolean.TRUE.equals(props.get(HAConstants.CONNECTION_PROPERTY_ENABLE_SSL));
+		HAClient client;
+		try {
+			client = new HAClient(new URL(url), token, enableSSL);
+		} catch (MalformedURLException e) {
+			throw new SQLException(e);
+		}
+		try {
+			HAEmbeddedReplicasManager.bootstrap(client, dir, replicationIDs, HAUtils.getIntProperty(props,
+					HAConstants.CONNECTION_PROPERTY_REPLICA_LOAD_PARALLELISM,
+					HAEmbeddedReplicasManager.DEFAULT_LOAD_PARALLELISM));
+		} finally {
+			client.close();
+		}
+	}
+
 	private Map<String, String> parseURLOptions(String urlString)
 			throws MalformedURLException, UnsupportedEncodingException {
 		URL url = new URL(urlString);
@@ -9,35 +9,309 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.sqlite.SQLiteCommitListener;
+import org.sqlite.SQLiteConnection;
 import org.sqlite.SQLiteConfig.JournalMode;
 import org.sqlite.SQLiteConfig.TempStore;
 import org.sqlite.SQLiteDataSource;
 
+import com.github.litesql.jdbc.ha.client.HAClient;
+import com.github.litesql.jdbc.ha.client.HAExecutionResult;
+
 public class HAEmbeddedReplicasManager {
 
+	/**
+	 * Idle read connections kept open per replica.
+	 */
+	private static final int MAX_IDLE_READERS = 8;
+	private static final long READER_MMAP_SIZE = 256L * 1024 * 1024;
+	/**
+	 * Page cache of each read connection, negative values are in KiB.
+	 */
+	private static final int READER_CACHE_SIZE = -16 * 1024;
+
+	public static final int DEFAULT_LOAD_PARALLELISM = Math.max(2, Runtime.getRuntime().availableProcessors());
+
 	public static class ReplicaConn {
 		String dsn;
 		Connection conn;
-		long txseq;
+		volatile long txseq;
+		/**
+		 * Highest txseq of the leader reported by the connections of this replica.
+		 */
+		private final AtomicLong leaderTxseq = new AtomicLong();
+		/**
+		 * When the replica was last seen at or past the txseq of the leader, 0 if
+		 * never.
+		 */
+		volatile long caughtUpAt;
+
+		private final AtomicBoolean refreshPending = new AtomicBoolean();
+
+		private final SQLiteDataSource readerDataSource;
+		private final Deque<Connection> readers = new ArrayDeque<>();
+		private int borrowedReaders;
+		private volatile boolean closed;
+		volatile long lastUsedAt = System.currentTimeMillis();
 
 		protected ReplicaConn(String dsn, Connection conn, long txseq) {
 			this.dsn = dsn;
 			this.conn = conn;
 			this.txseq = txseq;
+			this.readerDataSource = new SQLiteDataSource();
+			this.readerDataSource.setJournalMode(JournalMode.WAL.getValue());
+			this.readerDataSource.setTempStore(TempStore.MEMORY.getValue());
+			this.readerDataSource.setBusyTimeout(5000);
+			this.readerDataSource.setUrl(dsn);
 		}
 
+		/**
+		 * Open a new read-only connection to the replica.
+		 */
 		public Connection createConn() throws SQLException {
-			SQLiteDataSource ds = new SQLiteDataSource();
-			ds.setJournalMode(JournalMode.WAL.getValue());
-			ds.setTempStore(TempStore.MEMORY.getValue());
-			ds.setUrl(this.dsn);
-			return ds.getConnection();
+			Connection reader = this.readerDataSource.getConnection();
+			try (Statement stmt = reader.createStatement()) {
+				stmt.execute("PRAGMA query_only = 1");
+				stmt.execute("PRAGMA mmap_size = " + READER_MMAP_SIZE);
+				stmt.execute("PRAGMA cache_size = " + READER_CACHE_SIZE);
+			} catch (SQLException e) {
+				reader.close();
+				throw e;
+			}
+			return reader;
+		}
+
+		/**
+		 * Take a read-only connection from the pool of this replica, opening one if
+		 * none is idle. Give it back with {@link #release(Connection)} so the next
+		 * reader starts with a warm page cache.
+		 *
+		 * @return the connection, or {@code null} if the replica was deactivated.
+		 */
+		public Connection borrow() throws SQLException {
+			this.lastUsedAt = System.currentTimeMillis();
+			synchronized (this.readers) {
+				if (this.closed) {
+					return null;
+				}
+				this.borrowedReaders++;
+				Connection reader = this.readers.pollFirst();
+				if (reader != null) {
+					return reader;
+				}
+			}
+			try {
+				return createConn();
+			} catch (SQLException | RuntimeException e) {
+				synchronized (this.readers) {
+					this.borrowedReaders--;
+				}
+				throw e;
+			}
+		}
+
+		public void release(Connection reader) {
+			synchronized (this.readers) {
+				this.borrowedReaders--;
+			}
+			try {
+				if (reader.isClosed()) {
+					return;
+				}
+				if (!reader.getAutoCommit()) {
+					reader.rollback();
+					reader.setAutoCommit(true);
+				}
+				synchronized (this.readers) {
+					if (!this.closed && this.readers.size() < MAX_IDLE_READERS) {
+						this.readers.addFirst(reader);
+						return;
+					}
+				}
+				reader.close();
+			} catch (SQLException e) {
+				System.err.println("Error releasing reader of replica " + this.dsn + ": " + e.getMessage());
+			}
+		}
+
+		/**
+		 * Run a query on a borrowed reader.
+		 *
+		 * @param parameters values bound by 1-based index, may be {@code null}
+		 * @return the result, or {@code null} if the replica was deactivated.
+		 */
+		public HAExecutionResult executeQuery(String sql, Map<Object, Object> parameters) throws SQLException {
+			Connection reader = borrow();
+			if (reader == null) {
+				return null;
+			}
+			try (PreparedStatement stmt = reader.prepareStatement(sql)) {
+				if (parameters != null) {
+					for (Map.Entry<Object, Object> parameter : parameters.entrySet()) {
+						stmt.setObject((Integer) parameter.getKey(), parameter.getValue());
+					}
+				}
+				List<String> columns = new ArrayList<>();
+				List<Object[]> rows = new ArrayList<>();
+				try (ResultSet rs = stmt.executeQuery()) {
+					int columnCount = rs.getMetaData().getColumnCount();
+					for (int i = 1; i <= columnCount; i++) {
+						columns.add(rs.getMetaData().getColumnName(i));
+					}
+					while (rs.next()) {
+						Object[] row = new Object[columnCount];
+						for (int i = 1; i <= columnCount; i++) {
+							row[i - 1] = rs.getObject(i);
+						}
+						rows.add(row);
+					}
+					return new HAExecutionResult(columns, rows);
+				}
+			} finally {
+				release(reader);
+			}
+		}
+
+		/**
+		 * Refresh the replicated sequence as soon as the ha-sync extension commits
+		 * changes to the replica, instead of waiting for the next poll.
+		 */
+		void listenForCommits() throws SQLException {
+			if (!this.conn.isWrapperFor(SQLiteConnection.class)) {
+				return;
+			}
+			this.conn.unwrap(SQLiteConnection.class).addCommitListener(new SQLiteCommitListener() {
+				@Override
+				public void onCommit() {
+					requestRefresh();
+				}
+
+				@Override
+				public void onRollback() {
+				}
+			});
+		}
+
+		/**
+		 * Schedule a refresh of the replicated sequence. The commit hook runs inside
+		 * the commit, so the sequence is read from the scheduler thread; requests
+		 * made while a refresh is pending are coalesced into it.
+		 */
+		void requestRefresh() {
+			if (!this.refreshPending.compareAndSet(false, true)) {
+				return;
+			}
+			try {
+				scheduler.execute(() -> {
+					this.refreshPending.set(false);
+					refresh();
+				});
+			} catch (RejectedExecutionException e) {
+				this.refreshPending.set(false);
+			}
+		}
+
+		synchronized void refresh() {
+			try (Statement stmt = this.conn.createStatement()) {
+				try (ResultSet rs = stmt
+						.executeQuery("SELECT received_seq FROM ha_stats ORDER BY updated_at DESC LIMIT 1")) {
+					while (rs.next()) {
+						long received = rs.getLong(1);
+						this.txseq = received;
+					}
+				}
+			} catch (SQLException e) {
+				System.err.println("Error updating txseq for replica " + this.dsn + ": " + e.getMessage());
+			}
+			markIfCaughtUp();
+			notifyAll();
+		}
+
+		/**
+		 * Wait until the replica has applied the given sequence.
+		 *
+		 * @param timeout maximum time to wait in milliseconds
+		 * @return whether the replica reached the sequence in time.
+		 */
+		public boolean awaitTxseq(long txseq, long timeout) {
+			if (this.txseq >= txseq) {
+				return true;
+			}
+			long deadline = System.currentTimeMillis() + timeout;
+			synchronized (this) {
+				while (this.txseq < txseq) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						return false;
+					}
+					requestRefresh();
+					try {
+						wait(remaining);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		public boolean isClosed() {
+			return this.closed;
+		}
+
+		/**
+		 * Close the replica if no reader is borrowed and it was not used for
+		 * {@code idleTimeout} milliseconds.
+		 *
+		 * @return whether the replica was closed.
+		 */
+		boolean deactivateIfIdle(long idleTimeout) {
+			synchronized (this.readers) {
+				if (this.closed || this.borrowedReaders > 0
+						|| System.currentTimeMillis() - this.lastUsedAt < idleTimeout) {
+					return false;
+				}
+				// closed in the same block as the check, so no reader is borrowed in between
+				this.closed = true;
+			}
+			closeReaders();
+			try {
+				this.conn.close();
+			} catch (SQLException e) {
+				System.err.println("Error closing replica " + this.dsn + ": " + e.getMessage());
+			}
+			return true;
+		}
+
+		void closeReaders() {
+			synchronized (this.readers) {
+				this.closed = true;
+				for (Connection reader : this.readers) {
+					try {
+						reader.close();
+					} catch (SQLException e) {
+						e.printStackTrace();
+					}
+				}
+				this.readers.clear();
+			}
 		}
 
 		public Connection getConn() {
@@ -47,9 +321,72 @@ public class HAEmbeddedReplicasManager {
 		public long getTxSeq() {
 			return this.txseq;
 		}
+
+		/**
+		 * Report the txseq of the leader as seen by a connection.
+		 */
+		void observeLeader(long txseq) {
+			this.leaderTxseq.accumulateAndGet(txseq, Math::max);
+			markIfCaughtUp();
+		}
+
+		private void markIfCaughtUp() {
+			long leader = this.leaderTxseq.get();
+			// without a known leader txseq a replica cannot be proven fresh
+			if (leader > 0 && this.txseq >= leader) {
+				this.caughtUpAt = System.currentTimeMillis();
+			}
+		}
+
+		/**
+		 * @return when the replica was last seen at or past the txseq of the leader,
+		 *         0 if never.
+		 */
+		public long getCaughtUpAt() {
+			return this.caughtUpAt;
+		}
+
+		public String getDsn() {
+			return this.dsn;
+		}
 	}
 
-	private static Map<String, ReplicaConn> conns = new HashMap<>();
+	private static final Map<String, ReplicaConn> conns = new ConcurrentHashMap<>();
+
+	private static final Map<String, CompletableFuture<Void>> loadedDirs = new ConcurrentHashMap<>();
+
+	/**
+	 * A replica file found by a lazy load, opened when a connection first targets
+	 * it.
+	 */
+	private static class ReplicaSource {
+		final File file;
+		final String url;
+		final String stream;
+		final String durable;
+		/**
+		 * Idle timeout of the directory the replica was found in.
+		 */
+		final long idleTimeout;
+		long failedAt;
+
+		ReplicaSource(File file, String url, String stream, String durable, long idleTimeout) {
+			this.file = file;
+			this.url = url;
+			this.stream = stream;
+			this.durable = durable;
+			this.idleTimeout = idleTimeout;
+		}
+	}
+
+	/**
+	 * Delay before activating a replica that failed to open again.
+	 */
+	private static final long ACTIVATION_RETRY_MILLIS = 30000;
+
+	private static final Map<String, ReplicaSource> sources = new ConcurrentHashMap<>();
+
+	private static final Map<String, CompletableFuture<Void>> bootstrappedDirs = new ConcurrentHashMap<>();
 
 	private static File tempExt;
 
@@ -94,59 +431,264 @@ public class HAEmbeddedReplicasManager {
 	}
 
 	public static void load(String dir, String url, String stream, String durable) throws SQLException {
+		load(dir, url, stream, durable, DEFAULT_LOAD_PARALLELISM, false);
+	}
+
+	/**
+	 * @return whether {@link #bootstrap} already completed for the directory, so
+	 *         that no client is needed to bootstrap it.
+	 */
+	public static boolean isBootstrapped(String dir) {
+		CompletableFuture<Void> bootstrapped = bootstrappedDirs.get(new File(dir).getAbsolutePath());
+		return bootstrapped != null && bootstrapped.isDone();
+	}
+
+	/**
+	 * Download the latest snapshot of the replicas missing from a directory, once
+	 * per directory. Concurrent calls for a directory being bootstrapped wait for
+	 * it. Failures are logged, and the next call for the directory tries again;
+	 * replicas that could not be bootstrapped are read from the leader meanwhile.
+	 * Replication of a bootstrapped replica resumes from the sequence recorded in
+	 * the snapshot when the directory is loaded.
+	 *
+	 * @param replicationIDs the replicas to bootstrap, or {@code null} for all
+	 *                       replicas known by the server.
+	 * @param parallelism    number of snapshots downloaded at the same time
+	 */
+	public static void bootstrap(HAClient client, String dir, List<String> replicationIDs, int parallelism)
+			throws SQLException {
+		File directory = new File(dir);
+		String key = directory.getAbsolutePath();
+		CompletableFuture<Void> bootstrapping = new CompletableFuture<>();
+		CompletableFuture<Void> bootstrapped = bootstrappedDirs.putIfAbsent(key, bootstrapping);
+		if (bootstrapped != null) {
+			HAClient.await(bootstrapped, 0);
+			return;
+		}
+		boolean done = false;
+		try {
+			List<String> ids = replicationIDs;
+			if (ids == null) {
+				ids = client.getReplicationIDs();
+			}
+			if (!directory.exists() && !directory.mkdirs()) {
+				throw new IllegalArgumentException("Invalid directory: " + dir);
+			}
+			client.downloadLatestSnapshots(dir, ids, false, parallelism, null);
+			done = true;
+		} catch (Exception e) {
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			System.err.println("Error bootstrapping replicas in " + dir + ": " + e.getMessage());
+		} finally {
+			if (!done) {
+				// let the next connection retry the directory
+				bootstrappedDirs.remove(key, bootstrapping);
+			}
+			bootstrapping.complete(null);
+		}
+	}
+
+	/**
+	 * Register the replicas found in a directory without opening them. A replica
+	 * is opened the first time {@link #getReplica(String)} asks for it, and closed
+	 * again when unused for the idle timeout.
+	 *
+	 * @param idleTimeout milliseconds after which an unused replica of the
+	 *                    directory is closed, 0 to keep them open. The timeout
+	 *                    given when the directory is first loaded applies.
+	 */
+	public static void loadLazily(String dir, String url, String stream, String durable, long idleTimeout) {
 		File directory = new File(dir);
 		if (!directory.exists() || !directory.isDirectory()) {
 			throw new IllegalArgumentException("Invalid directory: " + dir);
 		}
+		if (loadedDirs.putIfAbsent(directory.getAbsolutePath(), CompletableFuture.completedFuture(null)) != null) {
+			return;
+		}
 		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isFile() && isSqliteFile(file)) {
+					sources.putIfAbsent(file.getName(), new ReplicaSource(file, url, stream, durable, idleTimeout));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Open the replicas found in a directory. Each directory is scanned once;
+	 * concurrent calls for a directory being loaded wait for that load instead of
+	 * scanning it again.
+	 *
+	 * @param parallelism number of replicas opened at the same time
+	 * @param background  return without waiting for the replicas to open. Each
+	 *                    replica serves reads as soon as it is open.
+	 */
+	public static void load(String dir, String url, String stream, String durable, int parallelism,
+			boolean background) throws SQLException {
+		File directory = new File(dir);
+		if (!directory.exists() || !directory.isDirectory()) {
+			throw new IllegalArgumentException("Invalid directory: " + dir);
+		}
+		String key = directory.getAbsolutePath();
+		CompletableFuture<Void> loading = new CompletableFuture<>();
+		CompletableFuture<Void> loaded = loadedDirs.putIfAbsent(key, loading);
+		if (loaded != null) {
+			if (!background) {
+				HAClient.await(loaded, 0);
+			}
+			return;
+		}
 
+		List<File> replicas = new ArrayList<>();
+		File[] files = directory.listFiles();
 		if (files != null) {
 			for (File file : files) {
-				if (!file.isFile() || conns.containsKey(file.getName())) {
-					continue;
-				}
-				if (!isSqliteFile(file)) {
-					continue;
-				}
-				String dsn = "jdbc:sqlite:" + file.getAbsolutePath();
-				SQLiteDataSource ds = new SQLiteDataSource();
-				ds.setJournalMode(JournalMode.WAL.getValue());
-				ds.setBusyTimeout(5000);
-				ds.setTempStore(TempStore.MEMORY.getValue());
-				ds.setUrl(dsn);
-				ds.setLoadExtension(true);
-				Connection conn = ds.getConnection();
-
-				try (Statement stmt = conn.createStatement()) {
-					stmt.execute("SELECT load_extension('" + tempExt.getAbsolutePath() + "')");
-					stmt.execute("CREATE VIRTUAL TABLE temp.ha USING HA(servers='" + url + "', timeout=5000)");
-				}
-				try (PreparedStatement pstmt = conn
-						.prepareStatement("INSERT INTO temp.ha(subject, durable) VALUES(?, ?)")) {
-					pstmt.setString(1, stream + "." + file.getName().replaceAll("\\.", "_"));
-					pstmt.setString(2, durable);
-					pstmt.execute();
-				}
-				long txseq = 0;
-				try (Statement stmt = conn.createStatement()) {
-					try (ResultSet rs = stmt
-							.executeQuery("SELECT received_seq FROM ha_stats ORDER BY updated_at DESC LIMIT 1")) {
-						while (rs.next()) {
-							txseq = rs.getLong(1);
-						}
+				if (file.isFile() && !conns.containsKey(file.getName()) && isSqliteFile(file)) {
+					replicas.add(file);
+				}
+			}
+		}
+
+		ExecutorService loader = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, replicas.size())),
+				r -> {
+					Thread t = new Thread(r);
+					t.setDaemon(true);
+					t.setName("ha-replica-loader");
+					return t;
+				});
+		CompletableFuture<?>[] opened = new CompletableFuture<?>[replicas.size()];
+		for (int i = 0; i < opened.length; i++) {
+			File file = replicas.get(i);
+			opened[i] = CompletableFuture.runAsync(() -> {
+				try {
+					ReplicaConn replica = open(file, url, stream, durable);
+					if (conns.putIfAbsent(file.getName(), replica) != null) {
+						replica.closeReaders();
+						replica.conn.close();
 					}
+				} catch (SQLException e) {
+					System.err.println("Error loading replica " + file.getName() + ": " + e.getMessage());
+					throw new CompletionException(e);
 				}
+			}, loader);
+		}
+		CompletableFuture.allOf(opened).whenComplete((v, e) -> {
+			loader.shutdown();
+			if (e != null) {
+				// let a later call retry the replicas that failed
+				loadedDirs.remove(key, loading);
+				loading.completeExceptionally(e);
+			} else {
+				loading.complete(null);
+			}
+		});
+		if (!background) {
+			HAClient.await(loading, 0);
+		}
+	}
+
+	private static ReplicaConn open(File file, String url, String stream, String durable) throws SQLException {
+		String dsn = "jdbc:sqlite:" + file.getAbsolutePath();
+		SQLiteDataSource ds = new SQLiteDataSource();
+		ds.setJournalMode(JournalMode.WAL.getValue());
+		ds.setBusyTimeout(5000);
+		ds.setTempStore(TempStore.MEMORY.getValue());
+		ds.setUrl(dsn);
+		ds.setLoadExtension(true);
+		Connection conn = ds.getConnection();
 
-				conns.put(file.getName(), new ReplicaConn(dsn, conn, txseq));
+		try {
+			try (Statement stmt = conn.createStatement()) {
+				stmt.execute("SELECT load_extension('" + tempExt.getAbsolutePath() + "')");
+				stmt.execute("CREATE VIRTUAL TABLE temp.ha USING HA(servers='" + url + "', timeout=5000)");
+			}
+			try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO temp.ha(subject, durable) VALUES(?, ?)")) {
+				pstmt.setString(1, stream + "." + file.getName().replaceAll("\\.", "_"));
+				pstmt.setString(2, durable);
+				pstmt.execute();
+			}
+			long txseq = 0;
+			try (Statement stmt = conn.createStatement()) {
+				try (ResultSet rs = stmt
+						.executeQuery("SELECT received_seq FROM ha_stats ORDER BY updated_at DESC LIMIT 1")) {
+					while (rs.next()) {
+						txseq = rs.getLong(1);
+					}
+				}
 			}
+
+			ReplicaConn replica = new ReplicaConn(dsn, conn, txseq);
+			replica.listenForCommits();
+			return replica;
+		} catch (SQLException | RuntimeException e) {
+			conn.close();
+			throw e;
 		}
 	}
 
 	public static ReplicaConn getReplica(String dbName) {
-		if (conns.size() == 1 && (dbName == null || dbName.isEmpty())) {
-			return conns.values().iterator().next();
+		if (dbName == null || dbName.isEmpty()) {
+			if (conns.size() == 1 && sources.size() <= 1) {
+				// the replica may be deactivated concurrently
+				return conns.values().stream().findFirst().orElse(null);
+			}
+			if (sources.size() != 1) {
+				return null;
+			}
+			dbName = sources.keySet().iterator().next();
+		}
+		ReplicaConn replica = conns.get(dbName);
+		if (replica == null) {
+			ReplicaSource source = sources.get(dbName);
+			if (source != null) {
+				replica = activate(dbName, source);
+			}
+		}
+		if (replica != null) {
+			replica.lastUsedAt = System.currentTimeMillis();
+		}
+		return replica;
+	}
+
+	private static ReplicaConn activate(String name, ReplicaSource source) {
+		synchronized (source) {
+			ReplicaConn replica = conns.get(name);
+			if (replica != null) {
+				return replica;
+			}
+			if (System.currentTimeMillis() - source.failedAt < ACTIVATION_RETRY_MILLIS) {
+				return null;
+			}
+			try {
+				replica = open(source.file, source.url, source.stream, source.durable);
+			} catch (SQLException e) {
+				source.failedAt = System.currentTimeMillis();
+				System.err.println("Error activating replica " + name + ": " + e.getMessage());
+				return null;
+			}
+			conns.put(name, replica);
+			return replica;
+		}
+	}
+
+	/**
+	 * Close lazily activated replicas that were not used for the idle timeout.
+	 */
+	private static void deactivateIdle() {
+		for (Map.Entry<String, ReplicaConn> entry : conns.entrySet()) {
+			ReplicaSource source = sources.get(entry.getKey());
+			if (source == null || source.idleTimeout <= 0) {
+				continue;
+			}
+			synchronized (source) {
+				if (entry.getValue().deactivateIfIdle(source.idleTimeout)) {
+					conns.remove(entry.getKey(), entry.getValue());
+				}
+			}
 		}
-		return conns.get(dbName);
 	}
 
 	private static void startScheduler() {
@@ -162,20 +704,14 @@ public class HAEmbeddedReplicasManager {
 		}
 	}
 
+	/**
+	 * Fallback for changes the commit listener did not report.
+	 */
 	private static void updateTxSeq() {
-		for (Map.Entry<String, ReplicaConn> entry : conns.entrySet()) {
-			ReplicaConn replica = entry.getValue();
-			try (Statement stmt = replica.conn.createStatement()) {
-				try (ResultSet rs = stmt
-						.executeQuery("SELECT received_seq FROM ha_stats ORDER BY updated_at DESC LIMIT 1")) {
-					while (rs.next()) {
-						replica.txseq = rs.getLong(1);
-					}
-				}
-			} catch (SQLException e) {
-				System.err.println("Error updating txseq for replica " + entry.getKey() + ": " + e.getMessage());
-			}
+		for (ReplicaConn replica : conns.values()) {
+			replica.refresh();
 		}
+		deactivateIdle();
 	}
 
 	public static void stopScheduler() {
@@ -192,6 +728,7 @@ public class HAEmbeddedReplicasManager {
 		}
 		for (Map.Entry<String, ReplicaConn> entry : conns.entrySet()) {
 			ReplicaConn replica = entry.getValue();
+			replica.closeReaders();
 			try {
 				replica.conn.close();
 			} catch (SQLException e) {
@@ -201,7 +738,7 @@ public class HAEmbeddedReplicasManager {
 	}
 
 	private static boolean isSqliteFile(File file) {
-		if (file.length() < 100) {
+		if (file.getName().endsWith(HAClient.DOWNLOAD_SUFFIX) || file.length() < 100) {
 			return false;
 		}
 		try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file, "r")) {
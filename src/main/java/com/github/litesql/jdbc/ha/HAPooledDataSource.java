@@ -0,0 +1,471 @@
+package com.github.litesql.jdbc.ha;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link HADataSource} that recycles {@link HAConnection}s. Closing a
+ * connection obtained from this data source resets its state (transaction,
+ * {@code PRAGMA query_only} and catalog) and returns it to the pool.
+ * Statements and metadata of a pooled connection return the pooled connection
+ * from {@code getConnection()}, and are closed once it is returned.
+ */
+public class HAPooledDataSource extends HADataSource implements AutoCloseable {
+
+	/**
+	 * Connections used more recently than this are handed out without a ping.
+	 */
+	private static final long VALIDATION_BYPASS_MILLIS = 500;
+
+	private static final long HOUSEKEEPING_PERIOD_MILLIS = 5000;
+
+	private class PooledConnection implements InvocationHandler {
+		final HAConnection connection;
+		final long createdAt = System.currentTimeMillis();
+		long lastUsedAt = createdAt;
+		long borrowedAt;
+		Throwable borrowTrace;
+		boolean leakReported;
+		Connection proxy;
+
+		PooledConnection(HAConnection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (this.proxy == proxy) {
+					release(this);
+				}
+				return null;
+			case "isClosed":
+				return this.proxy != proxy || connection.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Pooled" + connection;
+			default:
+				if (this.proxy != proxy) {
+					throw new SQLException("Connection is closed");
+				}
+				Object result;
+				try {
+					result = method.invoke(connection, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+				Class<?> type = method.getReturnType();
+				if (result != null && (Statement.class.isAssignableFrom(type) || type == DatabaseMetaData.class)) {
+					return Proxy.newProxyInstance(HAPooledDataSource.class.getClassLoader(), new Class<?>[] { type },
+							new PooledChild(this, (Connection) proxy, result));
+				}
+				return result;
+			}
+		}
+	}
+
+	/**
+	 * A statement or the metadata of a borrowed connection.
+	 */
+	private static class PooledChild implements InvocationHandler {
+		final PooledConnection pooled;
+		final Connection connection;
+		final Object target;
+
+		PooledChild(PooledConnection pooled, Connection connection, Object target) {
+			this.pooled = pooled;
+			this.connection = connection;
+			this.target = target;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			// the connection was returned to the pool and may be lent to another caller
+			boolean returned = this.pooled.proxy != this.connection;
+			switch (method.getName()) {
+			case "getConnection":
+				return this.connection;
+			case "close":
+				if (returned) {
+					return null;
+				}
+				break;
+			case "isClosed":
+				if (returned) {
+					return true;
+				}
+				break;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Pooled" + this.target;
+			default:
+				if (returned) {
+					throw new SQLException("Connection is closed");
+				}
+			}
+			try {
+				return method.invoke(this.target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	private final Logger logger = Logger.getLogger("com.github.litesql.jdbc.driver.ha");
+
+	private final Deque<PooledConnection> idle = new ArrayDeque<>();
+	private final Set<PooledConnection> borrowed = new HashSet<>();
+	private int totalConnections;
+	private boolean closed;
+
+	private int minIdle = 0;
+	private int maxPoolSize = 10;
+	private long maxLifetime = TimeUnit.MINUTES.toMillis(30);
+	private long idleTimeout = TimeUnit.MINUTES.toMillis(10);
+	private long connectionTimeout = TimeUnit.SECONDS.toMillis(30);
+	private int validationTimeout = 5;
+	private long leakDetectionThreshold = 0;
+
+	private ScheduledExecutorService housekeeper;
+
+	public HAPooledDataSource() {
+		super();
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		long deadline = System.currentTimeMillis() + this.connectionTimeout;
+		while (true) {
+			PooledConnection pooled;
+			synchronized (this) {
+				pooled = takeIdle(deadline);
+				if (pooled == null) {
+					this.totalConnections++;
+				}
+			}
+			if (pooled == null) {
+				try {
+					pooled = new PooledConnection(openConnection());
+				} catch (SQLException | RuntimeException e) {
+					synchronized (this) {
+						this.totalConnections--;
+						notifyAll();
+					}
+					throw e;
+				}
+			} else if (isExpired(pooled, System.currentTimeMillis()) || !isAlive(pooled)) {
+				destroy(pooled);
+				continue;
+			}
+			return borrow(pooled);
+		}
+	}
+
+	/**
+	 * Connections for a different user or password are not pooled.
+	 */
+	@Override
+	public Connection getConnection(String user, String pass) throws SQLException {
+		return super.getConnection(user, pass);
+	}
+
+	private PooledConnection takeIdle(long deadline) throws SQLException {
+		while (true) {
+			if (this.closed) {
+				throw new SQLException("Data source is closed");
+			}
+			PooledConnection pooled = this.idle.pollFirst();
+			if (pooled != null || this.totalConnections < this.maxPoolSize) {
+				return pooled;
+			}
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				throw new SQLTransientConnectionException(
+						"Connection not available, timed out after " + this.connectionTimeout + "ms");
+			}
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting for a connection", e);
+			}
+		}
+	}
+
+	private HAConnection openConnection() throws SQLException {
+		startHousekeeper();
+		return (HAConnection) super.getConnection();
+	}
+
+	private boolean isAlive(PooledConnection pooled) {
+		if (System.currentTimeMillis() - pooled.lastUsedAt < VALIDATION_BYPASS_MILLIS) {
+			return !pooled.connection.isClosed();
+		}
+		try {
+			return pooled.connection.isValid(this.validationTimeout);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private boolean isExpired(PooledConnection pooled, long now) {
+		return this.maxLifetime > 0 && now - pooled.createdAt >= this.maxLifetime;
+	}
+
+	private synchronized Connection borrow(PooledConnection pooled) {
+		pooled.borrowedAt = System.currentTimeMillis();
+		pooled.leakReported = false;
+		pooled.borrowTrace = this.leakDetectionThreshold > 0 ? new Throwable("Connection borrowed here") : null;
+		pooled.proxy = (Connection) Proxy.newProxyInstance(HAPooledDataSource.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, pooled);
+		this.borrowed.add(pooled);
+		return pooled.proxy;
+	}
+
+	private void release(PooledConnection pooled) {
+		synchronized (this) {
+			if (!this.borrowed.remove(pooled)) {
+				return;
+			}
+			pooled.proxy = null;
+			pooled.borrowTrace = null;
+		}
+		boolean reusable = !pooled.connection.isClosed();
+		if (reusable) {
+			try {
+				pooled.connection.resetState();
+			} catch (SQLException e) {
+				logger.log(Level.WARNING, "Could not reset pooled connection, discarding it", e);
+				reusable = false;
+			}
+		}
+		pooled.lastUsedAt = System.currentTimeMillis();
+		synchronized (this) {
+			if (reusable && !this.closed && !isExpired(pooled, pooled.lastUsedAt)) {
+				this.idle.addFirst(pooled);
+				notifyAll();
+				return;
+			}
+		}
+		destroy(pooled);
+	}
+
+	private void destroy(PooledConnection pooled) {
+		synchronized (this) {
+			this.totalConnections--;
+			notifyAll();
+		}
+		try {
+			pooled.connection.close();
+		} catch (SQLException e) {
+			logger.log(Level.FINE, "Error closing pooled connection", e);
+		}
+	}
+
+	private synchronized void startHousekeeper() {
+		if (this.housekeeper != null) {
+			return;
+		}
+		this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r);
+			t.setDaemon(true);
+			t.setName("ha-pool-housekeeper");
+			return t;
+		});
+		this.housekeeper.scheduleWithFixedDelay(this::houseKeeping, HOUSEKEEPING_PERIOD_MILLIS,
+				HOUSEKEEPING_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private void houseKeeping() {
+		long now = System.currentTimeMillis();
+		List<PooledConnection> evicted = new ArrayList<>();
+		int missing;
+		synchronized (this) {
+			if (this.closed) {
+				return;
+			}
+			for (PooledConnection pooled : this.borrowed) {
+				if (this.leakDetectionThreshold > 0 && !pooled.leakReported
+						&& now - pooled.borrowedAt > this.leakDetectionThreshold) {
+					pooled.leakReported = true;
+					logger.log(Level.WARNING, "Connection leak detection triggered, connection borrowed for "
+							+ (now - pooled.borrowedAt) + "ms", pooled.borrowTrace);
+				}
+			}
+			int idleCount = this.idle.size();
+			for (PooledConnection pooled : new ArrayList<>(this.idle)) {
+				boolean idleTooLong = this.idleTimeout > 0 && now - pooled.lastUsedAt > this.idleTimeout
+						&& idleCount > this.minIdle;
+				if (idleTooLong || isExpired(pooled, now)) {
+					this.idle.remove(pooled);
+					evicted.add(pooled);
+					idleCount--;
+				}
+			}
+			missing = Math.min(this.minIdle - idleCount, this.maxPoolSize - this.totalConnections + evicted.size());
+		}
+		for (PooledConnection pooled : evicted) {
+			destroy(pooled);
+		}
+		for (int i = 0; i < missing; i++) {
+			synchronized (this) {
+				if (this.closed || this.totalConnections >= this.maxPoolSize) {
+					return;
+				}
+				this.totalConnections++;
+			}
+			try {
+				PooledConnection pooled = new PooledConnection(openConnection());
+				synchronized (this) {
+					this.idle.addLast(pooled);
+					notifyAll();
+				}
+			} catch (SQLException | RuntimeException e) {
+				synchronized (this) {
+					this.totalConnections--;
+				}
+				logger.log(Level.WARNING, "Could not open pooled connection", e);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Close all idle connections. Borrowed connections are closed when they are
+	 * returned.
+	 */
+	@Override
+	public void close() {
+		List<PooledConnection> toClose;
+		synchronized (this) {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			toClose = new ArrayList<>(this.idle);
+			this.idle.clear();
+			if (this.housekeeper != null) {
+				this.housekeeper.shutdown();
+			}
+			notifyAll();
+		}
+		for (PooledConnection pooled : toClose) {
+			destroy(pooled);
+		}
+	}
+
+	public synchronized int getTotalConnections() {
+		return this.totalConnections;
+	}
+
+	public synchronized int getIdleConnections() {
+		return this.idle.size();
+	}
+
+	public synchronized int getActiveConnections() {
+		return this.borrowed.size();
+	}
+
+	public int getMinIdle() {
+		return minIdle;
+	}
+
+	public void setMinIdle(int minIdle) {
+		this.minIdle = minIdle;
+	}
+
+	public int getMaxPoolSize() {
+		return maxPoolSize;
+	}
+
+	public void setMaxPoolSize(int maxPoolSize) {
+		this.maxPoolSize = maxPoolSize;
+	}
+
+	public long getMaxLifetime() {
+		return maxLifetime;
+	}
+
+	/**
+	 * @param maxLifetime maximum lifetime of a pooled connection in milliseconds,
+	 *                    0 for no limit.
+	 */
+	public void setMaxLifetime(long maxLifetime) {
+		this.maxLifetime = maxLifetime;
+	}
+
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * @param idleTimeout time in milliseconds after which idle connections above
+	 *                    {@code minIdle} are closed, 0 to keep them.
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	public long getConnectionTimeout() {
+		return connectionTimeout;
+	}
+
+	/**
+	 * @param connectionTimeout time in milliseconds {@link #getConnection()} waits
+	 *                          for a connection when the pool is exhausted.
+	 */
+	public void setConnectionTimeout(long connectionTimeout) {
+		this.connectionTimeout = connectionTimeout;
+	}
+
+	public int getValidationTimeout() {
+		return validationTimeout;
+	}
+
+	/**
+	 * @param validationTimeout timeout in seconds of the ping used to validate
+	 *                          idle connections.
+	 */
+	public void setValidationTimeout(int validationTimeout) {
+		this.validationTimeout = validationTimeout;
+	}
+
+	public long getLeakDetectionThreshold() {
+		return leakDetectionThreshold;
+	}
+
+	/**
+	 * @param leakDetectionThreshold time in milliseconds a connection can be out
+	 *                               of the pool before a warning with the
+	 *                               borrowing stack trace is logged, 0 to
+	 *                               disable.
+	 */
+	public void setLeakDetectionThreshold(long leakDetectionThreshold) {
+		this.leakDetectionThreshold = leakDetectionThreshold;
+	}
+}
@@ -36,6 +36,7 @@ import java.sql.SQLXML;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.Calendar;
+import java.util.LinkedHashMap;
 
 import org.jkiss.code.NotNull;
 
@@ -44,16 +45,73 @@ import com.github.litesql.jdbc.ha.client.HAStreamInput;
 
 public class HAPreparedStatement extends HAStatement implements PreparedStatement {
 
+	/**
+	 * What is derived from the SQL of a prepared statement. It is immutable, so
+	 * the statement cache of the connection shares it between statements.
+	 */
+	static final class ParsedSql {
+		final String sql;
+		/**
+		 * Whether an up to date embedded replica can answer the statement.
+		 */
+		final boolean replicaQuery;
+		/**
+		 * Whether a cursor can page the statement.
+		 */
+		final boolean pageable;
+
+		ParsedSql(String sql) {
+			this.sql = sql;
+			boolean select = HAUtils.isSelectQuery(sql);
+			this.replicaQuery = select || HAUtils.isSchemaPragmaQuery(sql);
+			this.pageable = select && HACursor.canPage(sql);
+		}
+	}
+
+	private final ParsedSql parsed;
+	private boolean closed;
+
 	public HAPreparedStatement(@NotNull HAConnection connection, String sql, int queryTimeout) throws SQLException {
+		this(connection, new ParsedSql(sql), queryTimeout);
+	}
+
+	HAPreparedStatement(@NotNull HAConnection connection, ParsedSql parsed, int queryTimeout) throws SQLException {
 		super(connection, queryTimeout);
-		this.queryText = sql;
+		this.parsed = parsed;
+		this.queryText = parsed.sql;
+	}
+
+	@Override
+	protected boolean isReplicaQuery(String sql) {
+		return this.parsed.sql.equals(sql) ? this.parsed.replicaQuery : super.isReplicaQuery(sql);
+	}
+
+	@Override
+	protected boolean isPageableQuery(String sql) {
+		return this.parsed.sql.equals(sql) ? this.parsed.pageable : super.isPageableQuery(sql);
+	}
+
+	@Override
+	public void close() throws SQLException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		reset();
+	}
+
+	@Override
+	public boolean isClosed() throws SQLException {
+		return this.closed || super.isClosed();
 	}
 
-	protected void addParameter(int parameterIndex, Object value) {
+	protected void addParameter(int parameterIndex, Object value) throws SQLException {
+		checkOpen();
 		this.parameters.put(parameterIndex, value);
 	}
 
-	protected void addParameter(String parameterName, Object value) {
+	protected void addParameter(String parameterName, Object value) throws SQLException {
+		checkOpen();
 		this.parameters.put(parameterName, value);
 	}
 
@@ -144,6 +202,7 @@ public class HAPreparedStatement extends HAStatement implements PreparedStatemen
 
 	@Override
 	public void clearParameters() throws SQLException {
+		checkOpen();
 		this.parameters.clear();
 	}
 
@@ -159,7 +218,9 @@ public class HAPreparedStatement extends HAStatement implements PreparedStatemen
 
 	@Override
 	public void addBatch() throws SQLException {
-		throw new SQLFeatureNotSupportedException("Batches not supported");
+		checkOpen();
+		this.batchQueries.add(this.queryText);
+		this.batchParameters.add(new LinkedHashMap<>(this.parameters));
 	}
 
 	@Override
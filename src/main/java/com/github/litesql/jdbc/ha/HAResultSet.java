@@ -23,7 +23,9 @@ import com.github.litesql.jdbc.ha.client.HAExecutionResult;
 public class HAResultSet extends AbstractJdbcResultSet<HAStatement, HAResultSetMetaData> {
 
 	@Nullable
-	private final HAExecutionResult result;
+	private HAExecutionResult result;
+	@Nullable
+	private HACursor pager;
 	private transient int cursor = 0;
 	private transient boolean closed;
 	private transient boolean wasNull;
@@ -34,6 +36,16 @@ public class HAResultSet extends AbstractJdbcResultSet<HAStatement, HAResultSetM
 		this.result = result;
 	}
 
+	/**
+	 * @param pager source of the following pages when {@code result} is the first
+	 *              page of a cursor fetch.
+	 */
+	public HAResultSet(@NotNull HAStatement statement, @Nullable HAExecutionResult result,
+			@Nullable HACursor pager) {
+		this(statement, result);
+		this.pager = pager;
+	}
+
 	@Nullable
 	public HAExecutionResult getResult() {
 		return result;
@@ -54,25 +66,77 @@ public class HAResultSet extends AbstractJdbcResultSet<HAStatement, HAResultSetM
 		return index;
 	}
 
-	private Object[] getCurrentRow() throws HAException {
-		List<Object[]> rows = result.getRows();
+	private int getCurrentRow() throws HAException {
 		if (cursor < 1) {
 			throw new HAException("Fetch not started");
 		}
-		if (cursor > rows.size()) {
+		if (cursor > result.getRowCount()) {
 			throw new HAException("Fetch ended");
 		}
-		return rows.get(cursor - 1);
+		return cursor - 1;
+	}
+
+	private int getColumn(int columnIndex) throws HAException {
+		int columnCount = result.getColumns().size();
+		if (columnIndex < 1 || columnIndex > columnCount) {
+			throw new HAException("Column index " + columnIndex + " is beyond range (1-" + columnCount + ")");
+		}
+		return columnIndex - 1;
+	}
+
+	private long readLong(int columnIndex) throws SQLException {
+		int row = getCurrentRow();
+		int column = getColumn(columnIndex);
+		try {
+			wasNull = result.isNull(row, column);
+			return result.getLong(row, column);
+		} catch (IllegalStateException e) {
+			throw decodeError(e);
+		}
+	}
+
+	private double readDouble(int columnIndex) throws SQLException {
+		int row = getCurrentRow();
+		int column = getColumn(columnIndex);
+		try {
+			wasNull = result.isNull(row, column);
+			return result.getDouble(row, column);
+		} catch (IllegalStateException e) {
+			throw decodeError(e);
+		}
+	}
+
+	/**
+	 * A lazily decoded result reports an invalid value when it is first read.
+	 */
+	private static HAException decodeError(IllegalStateException e) {
+		return new HAException(e.getMessage(), e.getCause() != null ? e.getCause() : e);
 	}
 
 	@Override
 	public boolean next() throws SQLException {
-		return cursor++ < result.getRows().size();
+		if (cursor < result.getRowCount()) {
+			cursor++;
+			return true;
+		}
+		while (pager != null) {
+			HAExecutionResult page = pager.next(getStatement().getQueryTimeout());
+			if (page == null) {
+				pager = null;
+			} else if (page.getRowCount() > 0) {
+				result = page;
+				cursor = 1;
+				return true;
+			}
+		}
+		cursor = result.getRowCount() + 1;
+		return false;
 	}
 
 	@Override
 	public void close() throws SQLException {
 		this.closed = true;
+		this.pager = null;
 	}
 
 	@Override
@@ -92,32 +156,32 @@ public class HAResultSet extends AbstractJdbcResultSet<HAStatement, HAResultSetM
 
 	@Override
 	public byte getByte(int columnIndex) throws SQLException {
-		return (byte) CommonUtils.toInt(getObject(columnIndex));
+		return (byte) readLong(columnIndex);
 	}
 
 	@Override
 	public short getShort(int columnIndex) throws SQLException {
-		return (short) CommonUtils.toInt(getObject(columnIndex));
+		return (short) readLong(columnIndex);
 	}
 
 	@Override
 	public int getInt(int columnIndex) throws SQLException {
-		return CommonUtils.toInt(getObject(columnIndex));
+		return (int) readLong(columnIndex);
 	}
 
 	@Override
 	public long getLong(int columnIndex) throws SQLException {
-		return CommonUtils.toLong(getObject(columnIndex));
+		return readLong(columnIndex);
 	}
 
 	@Override
 	public float getFloat(int columnIndex) throws SQLException {
-		return CommonUtils.toFloat(getObject(columnIndex));
+		return (float) readDouble(columnIndex);
 	}
 
 	@Override
 	public double getDouble(int columnIndex) throws SQLException {
-		return CommonUtils.toDouble(getObject(columnIndex));
+		return readDouble(columnIndex);
 	}
 
 	@Override
@@ -180,32 +244,32 @@ public class HAResultSet extends AbstractJdbcResultSet<HAStatement, HAResultSetM
 
 	@Override
 	public byte getByte(String columnLabel) throws SQLException {
-		return (byte) CommonUtils.toInt(getObject(columnLabel));
+		return getByte(findColumn(columnLabel));
 	}
 
 	@Override
 	public short getShort(String columnLabel) throws SQLException {
-		return (short) CommonUtils.toInt(getObject(columnLabel));
+		return getShort(findColumn(columnLabel));
 	}
 
 	@Override
 	public int getInt(String columnLabel) throws SQLException {
-		return CommonUtils.toInt(getObject(columnLabel));
+		return getInt(findColumn(columnLabel));
 	}
 
 	@Override
 	public long getLong(String columnLabel) throws SQLException {
-		return CommonUtils.toLong(getObject(columnLabel));
+		return getLong(findColumn(columnLabel));
 	}
 
 	@Override
 	public float getFloat(String columnLabel) throws SQLException {
-		return CommonUtils.toFloat(getObject(columnLabel));
+		return getFloat(findColumn(columnLabel));
 	}
 
 	@Override
 	public double getDouble(String columnLabel) throws SQLException {
-		return CommonUtils.toDouble(getObject(columnLabel));
+		return getDouble(findColumn(columnLabel));
 	}
 
 	@Override
@@ -281,11 +345,13 @@ public class HAResultSet extends AbstractJdbcResultSet<HAStatement, HAResultSetM
 
 	@Override
 	public Object getObject(int columnIndex) throws SQLException {
-		Object[] currentRow = getCurrentRow();
-		if (columnIndex < 1 || columnIndex > currentRow.length) {
-			throw new HAException("Column index " + columnIndex + " is beyond range (1-" + currentRow.length + ")");
+		int row = getCurrentRow();
+		Object value;
+		try {
+			value = result.getObject(row, getColumn(columnIndex));
+		} catch (IllegalStateException e) {
+			throw decodeError(e);
 		}
-		Object value = currentRow[columnIndex - 1];
 		wasNull = (value == null);
 		return value;
 	}
@@ -21,7 +21,6 @@ import java.sql.Types;
 import java.util.List;
 
 import org.jkiss.code.NotNull;
-import org.jkiss.utils.CommonUtils;
 
 import com.dbeaver.jdbc.model.AbstractJdbcResultSetMetaData;
 import com.github.litesql.jdbc.ha.client.HAExecutionResult;
@@ -44,8 +43,8 @@ public class HAResultSetMetaData extends AbstractJdbcResultSetMetaData<HAStateme
 
 	private ResultColumnDataType getDataTypeFromData(int column) {
 		HAExecutionResult result = resultSet.getResult();
-		if (result != null && !CommonUtils.isEmpty(result.getRows())) {
-			Object columnValue = result.getRows().get(0)[column - 1];
+		if (result != null && result.getRowCount() > 0) {
+			Object columnValue = result.getObject(0, column - 1);
 			if (columnValue instanceof Boolean) {
 				return ResultColumnDataType.BOOLEAN;
 			} else if (columnValue instanceof Number) {
@@ -1,6 +1,6 @@
 package com.github.litesql.jdbc.ha;
 
-import java.sql.Connection;
+import java.sql.BatchUpdateException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
@@ -9,16 +9,18 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.jkiss.code.NotNull;
 import org.jkiss.code.Nullable;
 
 import com.dbeaver.jdbc.model.AbstractJdbcStatement;
+import com.github.litesql.jdbc.ha.client.HAClient;
 import com.github.litesql.jdbc.ha.client.HAExecutionResult;
 
 public class HAStatement extends AbstractJdbcStatement<HAConnection> {
 
-	private HAConnection connection;
+	protected final HAConnection connection;
 
 	protected String queryText;
 	protected Map<Object, Object> parameters = new LinkedHashMap<>();
@@ -26,40 +28,70 @@ public class HAStatement extends AbstractJdbcStatement<HAConnection> {
 	protected HAExecutionResult executionResult;
 	protected int updateCount;
 	protected HAResultSet resultSet;
+	protected HACursor cursor;
 
 	protected int queryTimeout;
+	protected int fetchSize;
+	protected long maxReplicaLag;
+	protected long maxReplicaStaleness;
+
+	protected List<String> batchQueries = new ArrayList<>();
+	protected List<Map<Object, Object>> batchParameters = new ArrayList<>();
 
 	public HAStatement(@NotNull HAConnection connection, int queryTimeout) throws SQLException {
 		super(connection);
 		this.connection = connection;
 		this.queryTimeout = queryTimeout;
+		this.maxReplicaLag = connection.getMaxReplicaLag();
+		this.maxReplicaStaleness = connection.getMaxReplicaStaleness();
 	}
 
-	private HAExecutionResult executeQueryOnConnection(Connection conn, String sql) throws SQLException {
-		try (Statement stmt = conn.createStatement()) {
-			List<String> columns = new ArrayList<>();
-			List<Object[]> rows = new ArrayList<>();
-			try (ResultSet rs = stmt.executeQuery(sql)) {
-				for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
-					columns.add(rs.getMetaData().getColumnName(i));
-				}
-				while (rs.next()) {
-					Object[] row = new Object[rs.getMetaData().getColumnCount()];
-					for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
-						row[i - 1] = rs.getObject(i);
-					}
-					rows.add(row);
-				}
-				return new HAExecutionResult(columns, rows);
+	/**
+	 * @return whether the statement can be answered by the embedded replica: a
+	 *         SELECT or schema pragma without named parameters on an up to date
+	 *         replica.
+	 */
+	private boolean canReadReplica(HAEmbeddedReplicasManager.ReplicaConn replica, String sql) {
+		if (replica == null || !isReplicaQuery(sql)) {
+			return false;
+		}
+		for (Object key : this.parameters.keySet()) {
+			if (!(key instanceof Integer)) {
+				return false;
 			}
 		}
+		return this.connection.isReplicaUpdated(this.maxReplicaLag, this.maxReplicaStaleness);
+	}
+
+	/**
+	 * @return whether the statement is a SELECT or schema pragma, which an
+	 *         embedded replica can answer.
+	 */
+	protected boolean isReplicaQuery(String sql) {
+		return HAUtils.isSelectQuery(sql) || HAUtils.isSchemaPragmaQuery(sql);
+	}
+
+	/**
+	 * @return whether the statement is a SELECT that {@link HACursor} can page.
+	 */
+	protected boolean isPageableQuery(String sql) {
+		return HAUtils.isSelectQuery(sql) && HACursor.canPage(sql);
 	}
 
 	@Override
 	public ResultSet executeQuery(String sql) throws SQLException {
-		Connection embeddedReplica = this.connection.getEmbeddedReplica();
-		if (embeddedReplica != null && this.connection.isReplicaUpdated() && HAUtils.isSelectQuery(sql)) {
-			executionResult = executeQueryOnConnection(embeddedReplica, sql);
+		checkOpen();
+		this.resultSet = null;
+		this.cursor = null;
+		HAEmbeddedReplicasManager.ReplicaConn embeddedReplica = this.connection.getEmbeddedReplica();
+		HAExecutionResult localResult = canReadReplica(embeddedReplica, sql)
+				? embeddedReplica.executeQuery(sql, this.parameters)
+				: null;
+		if (localResult != null) {
+			executionResult = localResult;
+		} else if (this.fetchSize > 0 && this.connection.isCursorFetch() && isPageableQuery(sql)) {
+			this.cursor = new HACursor(connection.getClient(), sql, parameters, this.fetchSize);
+			executionResult = this.cursor.next(this.queryTimeout);
 		} else {
 			executionResult = connection.getClient().executeQuery(sql, parameters, this.queryTimeout);
 		}
@@ -74,15 +106,24 @@ public class HAStatement extends AbstractJdbcStatement<HAConnection> {
 	@Override
 	protected boolean execute(@NotNull String sql, @Nullable int[] columnIndexes, @Nullable String[] columnNames,
 			int autoGeneratedKeys) throws SQLException {
+		checkOpen();
+		this.resultSet = null;
+		this.cursor = null;
 		executionResult = connection.getClient().execute(sql, parameters, this.queryTimeout);
 		return true;
 	}
 
 	@Override
 	public boolean execute() throws SQLException {
-		Connection embeddedReplica = this.connection.getEmbeddedReplica();
-		if (embeddedReplica != null && this.connection.isReplicaUpdated() && HAUtils.isSelectQuery(queryText)) {
-			executionResult = executeQueryOnConnection(embeddedReplica, queryText);
+		checkOpen();
+		this.resultSet = null;
+		this.cursor = null;
+		HAEmbeddedReplicasManager.ReplicaConn embeddedReplica = this.connection.getEmbeddedReplica();
+		HAExecutionResult localResult = canReadReplica(embeddedReplica, queryText)
+				? embeddedReplica.executeQuery(queryText, this.parameters)
+				: null;
+		if (localResult != null) {
+			executionResult = localResult;
 		} else {
 			executionResult = connection.getClient().execute(queryText, parameters, this.queryTimeout);
 		}
@@ -92,44 +133,180 @@ public class HAStatement extends AbstractJdbcStatement<HAConnection> {
 	@Override
 	protected int executeUpdate(@NotNull String sql, @Nullable int[] columnIndexes, @Nullable String[] columnNames,
 			int autoGeneratedKeys) throws SQLException {
+		checkOpen();
 		this.updateCount = connection.getClient().executeUpdate(sql, parameters, this.queryTimeout);
 		return this.updateCount;
 	}
 
 	@Override
 	public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+		checkOpen();
 		this.updateCount = connection.getClient().executeUpdate(sql, parameters, this.queryTimeout);
 		return this.updateCount;
 	}
 
 	@Override
 	public long executeLargeUpdate(String sql) throws SQLException {
+		checkOpen();
 		this.updateCount = connection.getClient().executeUpdate(sql, parameters, this.queryTimeout);
 		return this.updateCount;
 	}
 
 	@Override
 	public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+		checkOpen();
 		this.updateCount = connection.getClient().executeUpdate(sql, parameters, this.queryTimeout);
 		return this.updateCount;
 	}
 
 	@Override
 	public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+		checkOpen();
 		this.updateCount = connection.getClient().executeUpdate(sql, parameters, this.queryTimeout);
 		return this.updateCount;
 	}
 
 	@Override
 	public long executeLargeUpdate() throws SQLException {
+		checkOpen();
 		this.updateCount = connection.getClient().executeUpdate(queryText, parameters, this.queryTimeout);
 		return this.updateCount;
 	}
 
+	@Override
+	public void addBatch(String sql) throws SQLException {
+		checkOpen();
+		this.batchQueries.add(sql);
+		this.batchParameters.add(null);
+	}
+
+	@Override
+	public void clearBatch() throws SQLException {
+		this.batchQueries.clear();
+		this.batchParameters.clear();
+	}
+
+	/**
+	 * Where {@link HAStatement#executeBatch()} sends the statements of a batch.
+	 */
+	interface BatchTarget {
+		/**
+		 * Run a transaction control statement and wait for it.
+		 */
+		void control(String sql) throws SQLException;
+
+		CompletableFuture<HAExecutionResult> send(String sql, Map<Object, Object> parameters);
+	}
+
+	/**
+	 * Pipeline all batched statements on the query stream and wait for the
+	 * responses together. When the connection is in auto commit mode and no
+	 * transaction was opened with BEGIN, the batch runs inside its own
+	 * transaction, rolled back if any statement fails.
+	 */
+	@Override
+	public int[] executeBatch() throws SQLException {
+		checkOpen();
+		List<String> queries = this.batchQueries;
+		List<Map<Object, Object>> batchParams = this.batchParameters;
+		this.batchQueries = new ArrayList<>();
+		this.batchParameters = new ArrayList<>();
+		if (queries.isEmpty()) {
+			return new int[0];
+		}
+
+		HAClient client = connection.getClient();
+		boolean transaction = connection.getAutoCommit() && !client.isInTransaction();
+		return executeBatch(new BatchTarget() {
+			@Override
+			public void control(String sql) throws SQLException {
+				client.executeUpdate(sql, null, queryTimeout);
+			}
+
+			@Override
+			public CompletableFuture<HAExecutionResult> send(String sql, Map<Object, Object> parameters) {
+				return client.executeUpdateAsync(sql, parameters);
+			}
+		}, queries, batchParams, transaction, this.queryTimeout);
+	}
+
+	/**
+	 * @param transaction wrap the batch in its own transaction
+	 */
+	static int[] executeBatch(BatchTarget target, List<String> queries, List<Map<Object, Object>> batchParams,
+			boolean transaction, int queryTimeout) throws SQLException {
+		if (transaction) {
+			target.control("BEGIN");
+		}
+
+		List<CompletableFuture<HAExecutionResult>> responses = new ArrayList<>(queries.size());
+		for (int i = 0; i < queries.size(); i++) {
+			responses.add(target.send(queries.get(i), batchParams.get(i)));
+		}
+
+		int[] updateCounts = new int[queries.size()];
+		SQLException failure = null;
+		for (int i = 0; i < responses.size(); i++) {
+			try {
+				updateCounts[i] = (int) HAClient.await(responses.get(i), queryTimeout).getRowsAffected();
+			} catch (SQLException e) {
+				updateCounts[i] = Statement.EXECUTE_FAILED;
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+
+		if (failure != null) {
+			BatchUpdateException batchFailure = new BatchUpdateException(failure.getMessage(), failure.getSQLState(),
+					failure.getErrorCode(), updateCounts, failure);
+			if (transaction) {
+				try {
+					target.control("ROLLBACK");
+				} catch (SQLException e) {
+					// report the failed statement, not the failed rollback
+					batchFailure.addSuppressed(e);
+				}
+			}
+			throw batchFailure;
+		}
+		if (transaction) {
+			target.control("COMMIT");
+		}
+		return updateCounts;
+	}
+
+	@Override
+	public long[] executeLargeBatch() throws SQLException {
+		int[] updateCounts = executeBatch();
+		long[] largeCounts = new long[updateCounts.length];
+		for (int i = 0; i < updateCounts.length; i++) {
+			largeCounts[i] = updateCounts[i];
+		}
+		return largeCounts;
+	}
+
 	@Override
 	public void close() throws SQLException {
 	}
 
+	/**
+	 * Drop the parameters, batch and results of the statement and restore the
+	 * replica settings of the connection, as for a new statement.
+	 */
+	void reset() {
+		this.parameters.clear();
+		this.batchQueries.clear();
+		this.batchParameters.clear();
+		this.executionResult = null;
+		this.resultSet = null;
+		this.cursor = null;
+		this.updateCount = 0;
+		this.fetchSize = 0;
+		this.maxReplicaLag = this.connection.getMaxReplicaLag();
+		this.maxReplicaStaleness = this.connection.getMaxReplicaStaleness();
+	}
+
 	@Override
 	public void cancel() throws SQLException {
 		throw new SQLFeatureNotSupportedException();
@@ -141,7 +318,7 @@ public class HAStatement extends AbstractJdbcStatement<HAConnection> {
 			if (executionResult == null) {
 				throw new SQLException("No result set was returned from server");
 			}
-			resultSet = new HAResultSet(this, executionResult);
+			resultSet = new HAResultSet(this, executionResult, cursor);
 		}
 		return resultSet;
 	}
@@ -166,6 +343,43 @@ public class HAStatement extends AbstractJdbcStatement<HAConnection> {
 		this.queryTimeout = seconds;
 	}
 
+	@Override
+	public void setFetchSize(int rows) throws SQLException {
+		if (rows < 0) {
+			throw new SQLException("Fetch size must be >= 0");
+		}
+		this.fetchSize = rows;
+	}
+
+	@Override
+	public int getFetchSize() throws SQLException {
+		return this.fetchSize;
+	}
+
+	public long getMaxReplicaLag() {
+		return this.maxReplicaLag;
+	}
+
+	/**
+	 * Override the connection's {@link HAConnection#setMaxReplicaLag(long)} for
+	 * this statement.
+	 */
+	public void setMaxReplicaLag(long maxReplicaLag) {
+		this.maxReplicaLag = maxReplicaLag;
+	}
+
+	public long getMaxReplicaStaleness() {
+		return this.maxReplicaStaleness;
+	}
+
+	/**
+	 * Override the connection's {@link HAConnection#setMaxReplicaStaleness(long)}
+	 * for this statement.
+	 */
+	public void setMaxReplicaStaleness(long maxReplicaStaleness) {
+		this.maxReplicaStaleness = maxReplicaStaleness;
+	}
+
 	@Override
 	public boolean getMoreResults() throws SQLException {
 		return false;
@@ -191,4 +405,10 @@ public class HAStatement extends AbstractJdbcStatement<HAConnection> {
 		return this.connection.isClosed();
 	}
 
+	protected void checkOpen() throws SQLException {
+		if (isClosed()) {
+			throw new SQLException("Statement is closed");
+		}
+	}
+
 }
@@ -1,15 +1,43 @@
 package com.github.litesql.jdbc.ha;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Map;
 import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.jkiss.code.NotNull;
 
 public class HAUtils {
 
+	/**
+	 * Schema pragmas in their reading form: only the table and index pragmas take
+	 * an argument, as {@code schema_version(N)} assigns the version.
+	 */
+	private static final Pattern SCHEMA_PRAGMA_PATTERN = Pattern.compile("\\s*pragma\\s+(\\w+\\.)?(schema_version"
+			+ "|(table_x?info|index_list|index_x?info|foreign_key_list)\\s*(\\([^();]*\\))?)\\s*;?\\s*",
+			Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * Functions whose result changes between identical queries, and references to
+	 * the per-connection temp schema.
+	 */
+	private static final Pattern VOLATILE_QUERY_PATTERN = Pattern.compile(
+			"\\b(random|randomblob|changes|total_changes|last_insert_rowid)\\s*\\("
+					+ "|\\b(date|time|datetime|julianday|unixepoch)\\s*\\(\\s*\\)|'now'"
+					+ "|\\bcurrent_(date|time|timestamp)\\b|\\btemp\\s*\\.|\\bsqlite_temp_(master|schema)\\b",
+			Pattern.CASE_INSENSITIVE);
+
 	public static String quote(String identifier) {
 		return "'" + identifier + "'";
 	}
@@ -72,29 +100,95 @@ public class HAUtils {
 		return formattedUrl;
 	}
 
+	public static int getIntProperty(Map<String, Object> properties, String name, int defaultValue) {
+		Object value = properties.get(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.toString().trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	public static long getLongProperty(Map<String, Object> properties, String name, long defaultValue) {
+		Object value = properties.get(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.toString().trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	public static boolean getBooleanProperty(Map<String, Object> properties, String name, boolean defaultValue) {
+		Object value = properties.get(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		return Boolean.parseBoolean(value.toString().trim());
+	}
+
 	public static boolean isSelectQuery(String sql) {
 		String trimmedSql = sql.trim().toLowerCase();
 		return trimmedSql.startsWith("select") || trimmedSql.startsWith("with");
 	}
 
+	/**
+	 * @return whether identical executions of the query may return different
+	 *         results, as it calls {@code random()}, reads the current time or
+	 *         the state of the connection, or reads the temp schema.
+	 */
+	public static boolean isVolatileQuery(String sql) {
+		return VOLATILE_QUERY_PATTERN.matcher(sql).find();
+	}
+
+	/**
+	 * @return whether the statement is a pragma reading the schema, such as
+	 *         {@code pragma table_info(t)}, as opposed to one changing a setting.
+	 */
+	public static boolean isSchemaPragmaQuery(String sql) {
+		return SCHEMA_PRAGMA_PATTERN.matcher(sql).matches();
+	}
+
+	public static boolean isSchemaChangeQuery(String sql) {
+		String trimmedSql = sql.trim().toLowerCase();
+		return trimmedSql.startsWith("create") || trimmedSql.startsWith("alter") || trimmedSql.startsWith("drop");
+	}
+
 	public static boolean isTransactionControlQuery(String sql) {
 		String trimmedSql = sql.trim().toLowerCase();
-		return trimmedSql.startsWith("begin") || trimmedSql.startsWith("commit") || trimmedSql.startsWith("rollback");
+		return trimmedSql.startsWith("begin") || trimmedSql.startsWith("commit") || trimmedSql.startsWith("end")
+				|| trimmedSql.startsWith("rollback") || trimmedSql.startsWith("savepoint")
+				|| trimmedSql.startsWith("release");
 	}
 
+	/**
+	 * Write a chunk of a replica file at the given offset.
+	 *
+	 * @return the offset following the chunk.
+	 * @deprecated opens the file for every chunk; downloads now go through
+	 *             {@link com.github.litesql.jdbc.ha.client.HAClient}, which
+	 *             keeps one channel open for the whole transfer.
+	 */
+	@Deprecated
 	public static long writeFileChunk(String dir, String replicaID, byte[] data, long offset) {
+		Path path = Paths.get(dir, replicaID);
 		try {
-			java.nio.file.Path path = java.nio.file.Paths.get(dir, replicaID);
-			java.nio.file.Files.createDirectories(path.getParent());
-			try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(path.toFile(), "rw")) {
-				raf.seek(offset);
-				raf.write(data);
+			Files.createDirectories(path.getParent());
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.wrap(data);
+				long position = offset;
+				while (buffer.hasRemaining()) {
+					position += channel.write(buffer, position);
+				}
+				return position;
 			}
-			return offset + data.length;
-		} catch (Exception e) {
-			e.printStackTrace();
-			throw new RuntimeException(e);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
 	}
-
 }
@@ -9,37 +9,206 @@ import com.google.protobuf.InvalidProtocolBufferException;
 
 public class Converter {
 
+	/**
+	 * Well-known wrapper types a cell can be packed into. Resolved from the type
+	 * URL once per column instead of switching on the URL of every cell.
+	 */
+	enum ValueType {
+		EMPTY, STRING, DOUBLE, FLOAT, INT64, INT32, UINT64, UINT32, BOOL, TIMESTAMP, BYTES;
+
+		/**
+		 * Resolve the type from the encoded type URL of a cell, which Any keeps as
+		 * received until it is read as a String.
+		 */
+		static ValueType of(ByteString typeUrl) throws InvalidProtocolBufferException {
+			return of(typeUrl.toStringUtf8());
+		}
+
+		static ValueType of(String typeUrl) throws InvalidProtocolBufferException {
+			switch (typeUrl) {
+			case "type.googleapis.com/google.protobuf.Empty":
+				return EMPTY;
+			case "type.googleapis.com/google.protobuf.StringValue":
+				return STRING;
+			case "type.googleapis.com/google.protobuf.DoubleValue":
+				return DOUBLE;
+			case "type.googleapis.com/google.protobuf.FloatValue":
+				return FLOAT;
+			case "type.googleapis.com/google.protobuf.Int64Value":
+				return INT64;
+			case "type.googleapis.com/google.protobuf.Int32Value":
+				return INT32;
+			case "type.googleapis.com/google.protobuf.UInt64Value":
+				return UINT64;
+			case "type.googleapis.com/google.protobuf.UInt32Value":
+				return UINT32;
+			case "type.googleapis.com/google.protobuf.BoolValue":
+				return BOOL;
+			case "type.googleapis.com/google.protobuf.Timestamp":
+				return TIMESTAMP;
+			case "type.googleapis.com/google.protobuf.BytesValue":
+				return BYTES;
+			}
+			throw new InvalidProtocolBufferException("unsupported type:" + typeUrl);
+		}
+	}
+
 	protected static Object fromAny(Any x) throws InvalidProtocolBufferException {
 		if (x == null) {
 			return null;
 		}
-		switch (x.getTypeUrl()) {
-		case "type.googleapis.com/google.protobuf.Empty":
-			return null;
-		case "type.googleapis.com/google.protobuf.StringValue":
-			return com.google.protobuf.StringValue.parseFrom(x.getValue()).getValue();
-		case "type.googleapis.com/google.protobuf.DoubleValue":
-			return com.google.protobuf.DoubleValue.parseFrom(x.getValue()).getValue();
-		case "type.googleapis.com/google.protobuf.FloatValue":
-			return com.google.protobuf.FloatValue.parseFrom(x.getValue()).getValue();
-		case "type.googleapis.com/google.protobuf.Int64Value":
-			return com.google.protobuf.Int64Value.parseFrom(x.getValue()).getValue();
-		case "type.googleapis.com/google.protobuf.Int32Value":
-			return com.google.protobuf.Int32Value.parseFrom(x.getValue()).getValue();
-		case "type.googleapis.com/google.protobuf.UInt64Value":
-			return com.google.protobuf.UInt64Value.parseFrom(x.getValue()).getValue();
-		case "type.googleapis.com/google.protobuf.UInt32Value":
-			return com.google.protobuf.UInt32Value.parseFrom(x.getValue()).getValue();
-		case "type.googleapis.com/google.protobuf.BoolValue":
-			return com.google.protobuf.BoolValue.parseFrom(x.getValue()).getValue();
-		case "type.googleapis.com/google.protobuf.Timestamp":
-			com.google.protobuf.Timestamp timestamp = com.google.protobuf.Timestamp.parseFrom(x.getValue());
-			return Instant.ofEpochSecond(timestamp.getSeconds(), timestamp.getNanos());
-		case "type.googleapis.com/google.protobuf.BytesValue":
-			return com.google.protobuf.BytesValue.parseFrom(x.getValue()).getValue().toByteArray();
-		}
-
-		throw new InvalidProtocolBufferException("unsupported type:" + x.toString());
+		return toObject(ValueType.of(x.getTypeUrl()), x.getValue());
+	}
+
+	/**
+	 * Decode a packed value straight into a column. Integers and reals are read
+	 * from the wrapper payload into primitives, without parsing a wrapper message
+	 * or boxing the value.
+	 */
+	static void decode(ValueType type, ByteString payload, HAColumn column) throws InvalidProtocolBufferException {
+		try {
+			switch (type) {
+			case EMPTY:
+				column.addNull();
+				return;
+			case DOUBLE: {
+				int pos = findField(payload, 1);
+				column.addDouble(pos < 0 ? 0 : Double.longBitsToDouble(readFixed64(payload, pos)));
+				return;
+			}
+			case INT64:
+			case UINT64: {
+				int pos = findField(payload, 1);
+				column.addLong(pos < 0 ? 0 : readVarint(payload, pos));
+				return;
+			}
+			case INT32:
+			case UINT32: {
+				int pos = findField(payload, 1);
+				column.addInt(pos < 0 ? 0 : (int) readVarint(payload, pos));
+				return;
+			}
+			default:
+				column.add(toObject(type, payload));
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new InvalidProtocolBufferException("truncated " + type + " value");
+		}
+	}
+
+	private static Object toObject(ValueType type, ByteString payload) throws InvalidProtocolBufferException {
+		try {
+			int pos;
+			switch (type) {
+			case EMPTY:
+				return null;
+			case STRING:
+				pos = findField(payload, 1);
+				if (pos < 0) {
+					return "";
+				}
+				int length = (int) readVarint(payload, pos);
+				pos = skipVarint(payload, pos);
+				return payload.substring(pos, pos + length).toStringUtf8();
+			case DOUBLE:
+				pos = findField(payload, 1);
+				return pos < 0 ? 0d : Double.longBitsToDouble(readFixed64(payload, pos));
+			case FLOAT:
+				pos = findField(payload, 1);
+				return pos < 0 ? 0f : Float.intBitsToFloat(readFixed32(payload, pos));
+			case INT64:
+			case UINT64:
+				pos = findField(payload, 1);
+				return pos < 0 ? 0L : readVarint(payload, pos);
+			case INT32:
+			case UINT32:
+				pos = findField(payload, 1);
+				return pos < 0 ? 0 : (int) readVarint(payload, pos);
+			case BOOL:
+				pos = findField(payload, 1);
+				return pos >= 0 && readVarint(payload, pos) != 0;
+			case TIMESTAMP:
+				int secondsPos = findField(payload, 1);
+				int nanosPos = findField(payload, 2);
+				return Instant.ofEpochSecond(secondsPos < 0 ? 0 : readVarint(payload, secondsPos),
+						nanosPos < 0 ? 0 : (int) readVarint(payload, nanosPos));
+			case BYTES:
+				pos = findField(payload, 1);
+				if (pos < 0) {
+					return new byte[0];
+				}
+				int size = (int) readVarint(payload, pos);
+				pos = skipVarint(payload, pos);
+				return payload.substring(pos, pos + size).toByteArray();
+			default:
+				throw new InvalidProtocolBufferException("unsupported type:" + type);
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new InvalidProtocolBufferException("truncated " + type + " value");
+		}
+	}
+
+	/**
+	 * @return the offset of the value of the last occurrence of {@code field}, or
+	 *         -1 when the field is absent (the value is the default).
+	 */
+	private static int findField(ByteString payload, int field) throws InvalidProtocolBufferException {
+		int found = -1;
+		int pos = 0;
+		int size = payload.size();
+		while (pos < size) {
+			long tag = readVarint(payload, pos);
+			pos = skipVarint(payload, pos);
+			int wireType = (int) (tag & 0x7);
+			if ((tag >>> 3) == field) {
+				found = pos;
+			}
+			switch (wireType) {
+			case 0:
+				pos = skipVarint(payload, pos);
+				break;
+			case 1:
+				pos += 8;
+				break;
+			case 2:
+				int length = (int) readVarint(payload, pos);
+				pos = skipVarint(payload, pos) + length;
+				break;
+			case 5:
+				pos += 4;
+				break;
+			default:
+				throw new InvalidProtocolBufferException("unsupported wire type " + wireType);
+			}
+		}
+		return found;
+	}
+
+	private static long readVarint(ByteString payload, int pos) {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = payload.byteAt(pos++);
+			result |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				break;
+			}
+		}
+		return result;
+	}
+
+	private static int skipVarint(ByteString payload, int pos) {
+		while (payload.byteAt(pos++) < 0) {
+		}
+		return pos;
+	}
+
+	private static long readFixed64(ByteString payload, int pos) {
+		return (readFixed32(payload, pos) & 0xFFFFFFFFL) | ((long) readFixed32(payload, pos + 4) << 32);
+	}
+
+	private static int readFixed32(ByteString payload, int pos) {
+		return (payload.byteAt(pos) & 0xFF) | (payload.byteAt(pos + 1) & 0xFF) << 8
+				| (payload.byteAt(pos + 2) & 0xFF) << 16 | (payload.byteAt(pos + 3) & 0xFF) << 24;
 	}
 
 	protected static Any toAny(Object x) {
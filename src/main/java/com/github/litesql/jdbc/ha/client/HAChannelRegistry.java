@@ -0,0 +1,72 @@
+package com.github.litesql.jdbc.ha.client;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+
+/**
+ * Shares one HTTP/2 {@link ManagedChannel} between all clients connected to the
+ * same server with the same credentials. Each client opens its own streams on
+ * the shared channel. Channels are reference counted and shut down when the
+ * last client releases them.
+ */
+public class HAChannelRegistry {
+
+	private static class SharedChannel {
+		final ManagedChannel channel;
+		int references;
+
+		SharedChannel(ManagedChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+	private static final Map<List<Object>, SharedChannel> channels = new HashMap<>();
+
+	private HAChannelRegistry() {
+	}
+
+	public static synchronized ManagedChannel acquire(String host, int port, boolean enableSSL, String token) {
+		List<Object> key = Arrays.asList(host, port, enableSSL, token == null ? "" : token);
+		SharedChannel shared = channels.get(key);
+		if (shared == null || shared.channel.isShutdown()) {
+			ManagedChannelBuilder<?> channelBuilder = ManagedChannelBuilder.forAddress(host, port);
+			if (!enableSSL) {
+				channelBuilder = channelBuilder.usePlaintext();
+			}
+			shared = new SharedChannel(channelBuilder.build());
+			channels.put(key, shared);
+		}
+		shared.references++;
+		return shared.channel;
+	}
+
+	public static synchronized void release(ManagedChannel channel) {
+		Iterator<SharedChannel> it = channels.values().iterator();
+		while (it.hasNext()) {
+			SharedChannel shared = it.next();
+			if (shared.channel != channel) {
+				continue;
+			}
+			shared.references--;
+			if (shared.references <= 0) {
+				it.remove();
+				shared.channel.shutdown();
+			}
+			return;
+		}
+		channel.shutdown();
+	}
+
+	/**
+	 * @return the number of open shared channels.
+	 */
+	public static synchronized int size() {
+		return channels.size();
+	}
+}
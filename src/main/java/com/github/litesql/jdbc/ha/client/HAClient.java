@@ -1,18 +1,43 @@
 package com.github.litesql.jdbc.ha.client;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.sqlite.SQLiteDataSource;
 
 import com.github.litesql.jdbc.ha.HAUtils;
-import com.google.protobuf.Any;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 
 import build.buf.gen.sql.v1.DatabaseServiceGrpc;
@@ -29,7 +54,6 @@ import build.buf.gen.sql.v1.ReplicationIDsResponse;
 import build.buf.gen.sql.v1.Row;
 import io.grpc.CallCredentials;
 import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
 import io.grpc.StatusException;
 import io.grpc.stub.BlockingClientCall;
 import io.grpc.stub.StreamObserver;
@@ -39,32 +63,75 @@ import io.grpc.stub.StreamObserver;
  */
 public class HAClient {
 
+	public static final int DEFAULT_MAX_PENDING_REQUESTS = 16;
+
+	/**
+	 * Suffix of the file a download is written to before it is moved into place.
+	 */
+	public static final String DOWNLOAD_SUFFIX = ".download";
+
+	private static final long KEEPALIVE_INTERVAL_SECONDS = 25;
+	private static final long KEEPALIVE_CHECK_SECONDS = 5;
+	private static final long KEEPALIVE_TIMEOUT_SECONDS = 3;
+
+	private static final Logger logger = Logger.getLogger("com.github.litesql.jdbc.driver.ha");
+
+	/**
+	 * Open clients checked by the driver-wide keepalive task.
+	 */
+	private static final Set<HAClient> liveClients = ConcurrentHashMap.newKeySet();
+
+	private static ScheduledExecutorService keepAliveScheduler;
+
 	private String replicationID;
 
-	private final StreamObserver<QueryRequest> requestObserver;
+	private final HAQueryPipeline pipeline;
 
 	private ManagedChannel channel;
 	private DatabaseServiceBlockingV2Stub stub;
-	private CountDownLatch latch;
-	private QueryResponse responseRef;
 
-	private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-	private boolean badConn = false;
+	private volatile boolean badConn = false;
+	private volatile long lastActivity;
 
-	private long txseq;
+	private volatile long txseq;
+
+	private volatile boolean lazyDecode;
+
+	private volatile boolean verifyDownloads = true;
+
+	private final String endpoint;
+	/**
+	 * Identity of the token in {@link HAResultCache} keys.
+	 */
+	private final String credential;
+	private volatile long resultCacheTtl;
+	private volatile boolean inTransaction;
+	/**
+	 * Open savepoints, innermost first, and whether the transaction was started
+	 * by a savepoint instead of BEGIN.
+	 */
+	private final Deque<String> savepoints = new ArrayDeque<>();
+	private boolean savepointTransaction;
 
 	public HAClient(URL url, String token, boolean enableSSL) {
+		this(url, token, enableSSL, DEFAULT_MAX_PENDING_REQUESTS);
+	}
+
+	/**
+	 * @param maxPendingRequests maximum number of requests written to the query
+	 *                           stream before their responses arrive. Additional
+	 *                           requests are queued until a response frees a slot.
+	 *                           Use 1 to disable pipelining.
+	 */
+	public HAClient(URL url, String token, boolean enableSSL, int maxPendingRequests) {
 		this.replicationID = url.getPath();
 		if (this.replicationID.startsWith("/")) {
 			this.replicationID = this.replicationID.substring(1);
 		}
 
-		ManagedChannelBuilder<?> channelBuilder = ManagedChannelBuilder.forAddress(url.getHost(), url.getPort());
-		if (!enableSSL) {
-			channelBuilder = channelBuilder.usePlaintext();
-		}
-
-		this.channel = channelBuilder.build();
+		this.endpoint = url.getHost() + ":" + url.getPort();
+		this.credential = HAResultCache.credentialOf(token);
+		this.channel = HAChannelRegistry.acquire(url.getHost(), url.getPort(), enableSSL, token);
 
 		CallCredentials credentials = new Credentials(token);
 
@@ -76,20 +143,28 @@ public class HAClient {
 		StreamObserver<QueryResponse> responseObserver = new StreamObserver<QueryResponse>() {
 			@Override
 			public void onNext(QueryResponse response) {
-				responseRef = response;
-
+				lastActivity = System.nanoTime();
 				if (response.getTxseq() > 0) {
 					txseq = response.getTxseq();
 				}
-				latch.countDown();
+				HAQueryPipeline.PendingQuery query = pipeline.poll();
+				if (query == null) {
+					return;
+				}
+				if (response.getTxseq() > 0 && HAResultCache.isEnabled()) {
+					HAResultCache.observe(endpoint, query.request.getReplicationId(), response.getTxseq());
+				}
+				if (!response.getError().isEmpty()) {
+					query.response.completeExceptionally(new SQLException(response.getError()));
+				} else {
+					query.response.complete(response);
+				}
 			}
 
 			@Override
 			public void onError(Throwable t) {
-				responseRef = QueryResponse.newBuilder().setError(t.getMessage()).build();
-				if (latch != null) {
-					latch.countDown();
-				}
+				badConn = true;
+				pipeline.fail(t);
 			}
 
 			@Override
@@ -97,63 +172,246 @@ public class HAClient {
 			}
 		};
 
-		this.requestObserver = asyncStub.query(responseObserver);
+		this.pipeline = new HAQueryPipeline(asyncStub.query(responseObserver), maxPendingRequests);
 
-		Runnable task = () -> {
-			try {
-				send("SELECT 1", null, QueryType.QUERY_TYPE_PING, 3);
-			} catch (SQLException e) {
-				e.printStackTrace();
-				badConn = true;
-				executor.shutdown();
-			}
-		};
-		executor.scheduleWithFixedDelay(task, 25, 25, TimeUnit.SECONDS);
+		this.lastActivity = System.nanoTime();
+		startKeepAlive();
+		liveClients.add(this);
 	}
 
-	public void downloadCurrentReplica(String dir, String replicationID, boolean override)
-			throws StatusException, InterruptedException {
-		java.nio.file.Path path = java.nio.file.Paths.get(dir, replicationID);
-		if (!override && java.nio.file.Files.exists(path)) {
+	private static synchronized void startKeepAlive() {
+		if (keepAliveScheduler != null) {
 			return;
 		}
+		keepAliveScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r);
+			// make keepalive thread a daemon so it doesn't prevent JVM exit
+			t.setDaemon(true);
+			t.setName("ha-keepalive");
+			return t;
+		});
+		keepAliveScheduler.scheduleWithFixedDelay(HAClient::keepAlive, KEEPALIVE_CHECK_SECONDS,
+				KEEPALIVE_CHECK_SECONDS, TimeUnit.SECONDS);
+	}
 
-		BlockingClientCall<?, DownloadResponse> call = this.stub
-				.download(DownloadRequest.newBuilder().setReplicationId(replicationID).build());
-		long offset = 0;
-		while (call.hasNext()) {
-			DownloadResponse response = call.read();
-			offset = HAUtils.writeFileChunk(dir, replicationID, response.getData().toByteArray(), offset);
+	/**
+	 * Ping the streams of clients that have been idle for the keepalive interval.
+	 * Pings are asynchronous so one unresponsive server does not delay the others.
+	 */
+	private static void keepAlive() {
+		long idleLimit = System.nanoTime() - TimeUnit.SECONDS.toNanos(KEEPALIVE_INTERVAL_SECONDS);
+		for (HAClient client : liveClients) {
+			if (client.badConn || client.lastActivity - idleLimit > 0 || client.pipeline.hasPendingRequests()) {
+				continue;
+			}
+			client.sendAsync("SELECT 1", null, QueryType.QUERY_TYPE_PING)
+					.orTimeout(KEEPALIVE_TIMEOUT_SECONDS, TimeUnit.SECONDS).whenComplete((response, e) -> {
+						if (e == null) {
+							return;
+						}
+						logger.log(Level.WARNING, "Keepalive ping failed", e);
+						if (!(e instanceof TimeoutException)) {
+							client.badConn = true;
+							liveClients.remove(client);
+						}
+					});
 		}
 	}
 
+	public void downloadCurrentReplica(String dir, String replicationID, boolean override)
+			throws StatusException, InterruptedException {
+		downloadReplica(dir, replicationID, override, false, null);
+	}
+
 	public void downloadAllCurrentReplicas(String dir, boolean override) throws StatusException, InterruptedException {
-		ReplicationIDsResponse response = this.stub.replicationIDs(null);
-		for (int i = 0; i < response.getReplicationIdCount(); i++) {
-			downloadCurrentReplica(dir, response.getReplicationId(i), override);
-		}
+		downloadAllCurrentReplicas(dir, override, 1, null);
+	}
+
+	/**
+	 * Download all replicas, streaming up to {@code parallelism} of them at once
+	 * over the shared channel. All downloads run to completion before the first
+	 * failure, if any, is thrown.
+	 *
+	 * @param listener receives the progress, may be {@code null}
+	 */
+	public void downloadAllCurrentReplicas(String dir, boolean override, int parallelism,
+			HADownloadListener listener) throws StatusException, InterruptedException {
+		downloadAll(dir, this.stub.replicationIDs(null).getReplicationIdList(), override, false, parallelism,
+				listener);
 	}
 
 	public void downloadLatestSnapshot(String dir, String replicationID, boolean override)
 			throws StatusException, InterruptedException {
+		downloadReplica(dir, replicationID, override, true, null);
+	}
+
+	public void downloadAllLatestSnapshots(String dir, boolean override) throws StatusException, InterruptedException {
+		downloadAllLatestSnapshots(dir, override, 1, null);
+	}
+
+	/**
+	 * Download the latest snapshot of all replicas, streaming up to
+	 * {@code parallelism} of them at once over the shared channel. All downloads
+	 * run to completion before the first failure, if any, is thrown.
+	 *
+	 * @param listener receives the progress, may be {@code null}
+	 */
+	public void downloadAllLatestSnapshots(String dir, boolean override, int parallelism,
+			HADownloadListener listener) throws StatusException, InterruptedException {
+		downloadAll(dir, this.stub.replicationIDs(null).getReplicationIdList(), override, true, parallelism,
+				listener);
+	}
+
+	/**
+	 * Download the latest snapshot of the given replicas, streaming up to
+	 * {@code parallelism} of them at once over the shared channel. All downloads
+	 * run to completion before the first failure, if any, is thrown.
+	 *
+	 * @param listener receives the progress, may be {@code null}
+	 */
+	public void downloadLatestSnapshots(String dir, List<String> replicationIDs, boolean override, int parallelism,
+			HADownloadListener listener) throws StatusException, InterruptedException {
+		downloadAll(dir, replicationIDs, override, true, parallelism, listener);
+	}
+
+	private void downloadAll(String dir, List<String> ids, boolean override, boolean snapshot, int parallelism,
+			HADownloadListener listener) throws StatusException, InterruptedException {
+		if (parallelism <= 1 && listener == null) {
+			for (String id : ids) {
+				downloadReplica(dir, id, override, snapshot, null);
+			}
+			return;
+		}
+
+		AtomicLong totalBytes = new AtomicLong();
+		AtomicInteger completed = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, ids.size())), r -> {
+			Thread t = new Thread(r);
+			t.setDaemon(true);
+			t.setName("ha-download");
+			return t;
+		});
+		Throwable failure = null;
+		try {
+			List<Future<?>> downloads = new ArrayList<>(ids.size());
+			for (String id : ids) {
+				downloads.add(executor.submit(() -> {
+					LongConsumer progress = null;
+					if (listener != null) {
+						long[] replicaBytes = new long[1];
+						progress = written -> {
+							replicaBytes[0] += written;
+							listener.onProgress(id, replicaBytes[0], totalBytes.addAndGet(written));
+						};
+					}
+					downloadReplica(dir, id, override, snapshot, progress);
+					if (listener != null) {
+						listener.onDownloaded(id, completed.incrementAndGet(), ids.size());
+					}
+					return null;
+				}));
+			}
+			executor.shutdown();
+			for (Future<?> download : downloads) {
+				try {
+					download.get();
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = e.getCause();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			throw e;
+		}
+		if (failure instanceof StatusException) {
+			throw (StatusException) failure;
+		}
+		if (failure instanceof InterruptedException) {
+			throw (InterruptedException) failure;
+		}
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+		if (failure != null) {
+			throw new IllegalStateException(failure);
+		}
+	}
+
+	private void downloadReplica(String dir, String replicationID, boolean override, boolean snapshot,
+			LongConsumer progress) throws StatusException, InterruptedException {
 		java.nio.file.Path path = java.nio.file.Paths.get(dir, replicationID);
-		if (!override && java.nio.file.Files.exists(path)) {
+		if (!override && Files.exists(path)) {
 			return;
 		}
-		BlockingClientCall<?, LatestSnapshotResponse> call = this.stub
-				.latestSnapshot(LatestSnapshotRequest.newBuilder().setReplicationId(replicationID).build());
-		long offset = 0;
-		while (call.hasNext()) {
-			LatestSnapshotResponse response = call.read();
-			offset = HAUtils.writeFileChunk(dir, replicationID, response.getData().toByteArray(), offset);
+		if (snapshot) {
+			BlockingClientCall<?, LatestSnapshotResponse> call = this.stub
+					.latestSnapshot(LatestSnapshotRequest.newBuilder().setReplicationId(replicationID).build());
+			download(call, LatestSnapshotResponse::getData, path, progress, this.verifyDownloads);
+		} else {
+			BlockingClientCall<?, DownloadResponse> call = this.stub
+					.download(DownloadRequest.newBuilder().setReplicationId(replicationID).build());
+			download(call, DownloadResponse::getData, path, progress, this.verifyDownloads);
 		}
 	}
 
-	public void downloadAllLatestSnapshots(String dir, boolean override) throws StatusException, InterruptedException {
-		this.stub.download(DownloadRequest.newBuilder().setReplicationId(replicationID).build());
-		ReplicationIDsResponse response = this.stub.replicationIDs(null);
-		for (int i = 0; i < response.getReplicationIdCount(); i++) {
-			downloadLatestSnapshot(dir, response.getReplicationId(i), override);
+	/**
+	 * Stream a download to a staging file next to {@code path}, sync and verify
+	 * it, then atomically move it into place. An interrupted or corrupt download
+	 * never replaces the file.
+	 *
+	 * @param progress receives the size of each written chunk, may be
+	 *                 {@code null}
+	 */
+	private static <T> void download(BlockingClientCall<?, T> call, Function<T, ByteString> data,
+			java.nio.file.Path path, LongConsumer progress, boolean verify)
+			throws StatusException, InterruptedException {
+		java.nio.file.Path staging = path.resolveSibling("." + path.getFileName() + DOWNLOAD_SUFFIX);
+		try {
+			try (HADownloadWriter writer = new HADownloadWriter(staging)) {
+				while (call.hasNext()) {
+					ByteString chunk = data.apply(call.read());
+					writer.write(chunk);
+					if (progress != null) {
+						progress.accept(chunk.size());
+					}
+				}
+				writer.sync();
+			}
+			if (verify) {
+				verify(staging);
+			}
+			try {
+				Files.move(staging, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(staging, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			try {
+				Files.deleteIfExists(staging);
+			} catch (IOException e) {
+				logger.log(Level.WARNING, "Could not delete " + staging, e);
+			}
+		}
+	}
+
+	private static void verify(java.nio.file.Path file) throws IOException {
+		SQLiteDataSource ds = new SQLiteDataSource();
+		ds.setUrl("jdbc:sqlite:" + file.toAbsolutePath());
+		// the check must not create or alter the file it verifies
+		ds.setReadOnly(true);
+		try (Connection conn = ds.getConnection();
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery("PRAGMA quick_check")) {
+			String result = rs.next() ? rs.getString(1) : null;
+			if (!"ok".equalsIgnoreCase(result)) {
+				throw new IOException("Downloaded database " + file.getFileName() + " is corrupt: " + result);
+			}
+		} catch (SQLException e) {
+			throw new IOException("Could not verify downloaded database " + file.getFileName(), e);
 		}
 	}
 
@@ -189,22 +447,26 @@ public class HAClient {
 	 */
 	public HAExecutionResult executeQuery(String stmt, Map<Object, Object> parameters, int timeout)
 			throws SQLException {
+		if (!isCacheable(stmt)) {
+			QueryResponse response = send(stmt, parameters, QueryType.QUERY_TYPE_EXEC_QUERY, timeout);
+			return toQueryResult(response);
+		}
+		String id = this.replicationID;
+		HAExecutionResult cached = HAResultCache.get(this.endpoint, this.credential, id, stmt, parameters,
+				this.resultCacheTtl);
+		if (cached != null) {
+			return cached;
+		}
+		long observedTxseq = HAResultCache.observed(this.endpoint, id);
 		QueryResponse response = send(stmt, parameters, QueryType.QUERY_TYPE_EXEC_QUERY, timeout);
+		return cacheResult(id, stmt, parameters, observedTxseq, response, toQueryResult(response));
+	}
 
-		List<String> columns = new ArrayList<String>(response.getResultSet().getColumnsList());
-		List<Object[]> rows = new ArrayList<Object[]>();
-		try {
-			for (Row rowAny : response.getResultSet().getRowsList()) {
-				Object[] row = new Object[rowAny.getValuesCount()];
-				for (int i = 0; i < rowAny.getValuesCount(); i++) {
-					row[i] = Converter.fromAny(rowAny.getValues(i));
-				}
-				rows.add(row);
-			}
-		} catch (InvalidProtocolBufferException e) {
-			throw new SQLException(e);
-		}
-		return new HAExecutionResult(columns, rows);
+	/**
+	 * Send a lightweight ping through the query stream.
+	 */
+	public void ping(int timeout) throws SQLException {
+		send("SELECT 1", null, QueryType.QUERY_TYPE_PING, timeout);
 	}
 
 	public int executeUpdate(String stmt, Map<Object, Object> parameters, int timeout) throws SQLException {
@@ -214,65 +476,143 @@ public class HAClient {
 
 	public HAExecutionResult execute(String stmt, Map<Object, Object> parameters, int timeout) throws SQLException {
 		QueryResponse response = send(stmt, parameters, QueryType.QUERY_TYPE_UNSPECIFIED, timeout);
+		return toExecutionResult(response);
+	}
+
+	/**
+	 * Execute a single SQL query without blocking the caller. The future is
+	 * completed from the gRPC stream callback, failing with a
+	 * {@link SQLException} if the server reports an error.
+	 */
+	public CompletableFuture<HAExecutionResult> executeQueryAsync(String stmt, Map<Object, Object> parameters) {
+		boolean cacheable = isCacheable(stmt);
+		String id = this.replicationID;
+		if (cacheable) {
+			HAExecutionResult cached = HAResultCache.get(this.endpoint, this.credential, id, stmt, parameters,
+					this.resultCacheTtl);
+			if (cached != null) {
+				return CompletableFuture.completedFuture(cached);
+			}
+		}
+		long observedTxseq = cacheable ? HAResultCache.observed(this.endpoint, id) : 0;
+		return sendAsync(stmt, parameters, QueryType.QUERY_TYPE_EXEC_QUERY).thenApply(response -> {
+			try {
+				HAExecutionResult result = toQueryResult(response);
+				return cacheable ? cacheResult(id, stmt, parameters, observedTxseq, response, result) : result;
+			} catch (SQLException e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+
+	/**
+	 * Execute a single SQL update without blocking the caller.
+	 *
+	 * @return a future holding the number of affected rows.
+	 */
+	public CompletableFuture<HAExecutionResult> executeUpdateAsync(String stmt, Map<Object, Object> parameters) {
+		return sendAsync(stmt, parameters, QueryType.QUERY_TYPE_EXEC_UPDATE)
+				.thenApply(response -> new HAExecutionResult(response.getRowsAffected()));
+	}
 
+	public CompletableFuture<HAExecutionResult> executeAsync(String stmt, Map<Object, Object> parameters) {
+		return sendAsync(stmt, parameters, QueryType.QUERY_TYPE_UNSPECIFIED).thenApply(response -> {
+			try {
+				return toExecutionResult(response);
+			} catch (SQLException e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+
+	private HAExecutionResult toExecutionResult(QueryResponse response) throws SQLException {
 		if (response.getResultSet() == null || response.getResultSet().getColumnsCount() == 0) {
 			return new HAExecutionResult(response.getRowsAffected());
 		}
+		return toQueryResult(response);
+	}
+
+	private HAExecutionResult toQueryResult(QueryResponse response) throws SQLException {
 		List<String> columns = new ArrayList<String>(response.getResultSet().getColumnsList());
-		List<Object[]> rows = new ArrayList<Object[]>();
+		List<Row> rows = response.getResultSet().getRowsList();
+		HAExecutionResult result = new HAExecutionResult(columns, rows.size());
+		if (this.lazyDecode) {
+			result.setEncodedRows(rows);
+			return result;
+		}
 		try {
-			for (Row rowAny : response.getResultSet().getRowsList()) {
-				Object[] row = new Object[rowAny.getValuesCount()];
-				for (int i = 0; i < rowAny.getValuesCount(); i++) {
-					row[i] = Converter.fromAny(rowAny.getValues(i));
+			for (Row row : rows) {
+				for (int i = 0; i < columns.size(); i++) {
+					result.decode(row, i);
 				}
-				rows.add(row);
 			}
 		} catch (InvalidProtocolBufferException e) {
 			throw new SQLException(e);
 		}
-		return new HAExecutionResult(columns, rows);
+		result.setRowCount(rows.size());
+		return result;
 	}
 
-	private synchronized QueryResponse send(String sql, Map<Object, Object> parameters, QueryType type, int timeout)
+	private QueryResponse send(String sql, Map<Object, Object> parameters, QueryType type, int timeout)
 			throws SQLException {
-		if (this.badConn) {
-			throw new SQLException("bad connection");
+		return await(sendAsync(sql, parameters, type), timeout);
+	}
+
+	/**
+	 * Wait for an asynchronous result.
+	 *
+	 * @param timeout timeout in seconds, 0 to wait indefinitely.
+	 */
+	public static <T> T await(CompletableFuture<T> future, int timeout) throws SQLException {
+		try {
+			if (timeout > 0) {
+				return future.get(timeout, TimeUnit.SECONDS);
+			}
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for response", e);
+		} catch (TimeoutException e) {
+			throw new SQLTimeoutException("Query timeout after " + timeout + " seconds");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			throw new SQLException(e.getCause());
 		}
-		this.latch = new CountDownLatch(1);
+	}
+
+	private CompletableFuture<QueryResponse> sendAsync(String sql, Map<Object, Object> parameters, QueryType type) {
 		QueryRequest.Builder builder = QueryRequest.newBuilder().setReplicationId(this.replicationID).setSql(sql)
 				.setType(type);
+		trackTransaction(sql);
 
 		if (parameters != null && !parameters.isEmpty()) {
 			boolean indexParameters = isIndexedParams(parameters);
-			List<NamedValue> namedValues = new ArrayList<>();
-			AtomicInteger counter = new AtomicInteger(1);
-			parameters.forEach((key, value) -> {
-				NamedValue.Builder namedValueBuilder = NamedValue.newBuilder();
-				Any anyValue = Converter.toAny(value);
+			long ordinal = 1;
+			// build the values in place instead of through intermediate builders
+			for (Map.Entry<Object, Object> parameter : parameters.entrySet()) {
+				NamedValue.Builder namedValue = builder.addParamsBuilder()
+						.setValue(Converter.toAny(parameter.getValue()));
 				if (indexParameters) {
-					namedValueBuilder.setOrdinal(((Number) key).longValue()).setValue(anyValue).build();
+					namedValue.setOrdinal(((Number) parameter.getKey()).longValue());
 				} else {
-					namedValueBuilder.setName(String.valueOf(key)).setOrdinal(counter.longValue()).setValue(anyValue)
-							.build();
+					namedValue.setName(String.valueOf(parameter.getKey())).setOrdinal(ordinal);
 				}
-				counter.incrementAndGet();
-				namedValues.add(namedValueBuilder.build());
-			});
-			builder.addAllParams(namedValues);
+				ordinal++;
+			}
 		}
 
-		this.requestObserver.onNext(builder.build());
-		try {
-			this.latch.await(timeout, TimeUnit.SECONDS); // Wait for onNext
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-		}
-		if (!responseRef.getError().isEmpty()) {
-			throw new SQLException(responseRef.getError());
+		HAQueryPipeline.PendingQuery query = new HAQueryPipeline.PendingQuery(builder.build());
+		trackSchemaChange(sql, query.response);
+		this.lastActivity = System.nanoTime();
+		if (this.badConn) {
+			// the keepalive ping failed
+			query.response.completeExceptionally(new SQLException("bad connection"));
+		} else {
+			this.pipeline.send(query);
 		}
-
-		return responseRef;
+		return query.response;
 	}
 
 	public String getReplicationID() {
@@ -287,6 +627,141 @@ public class HAClient {
 		return txseq;
 	}
 
+	/**
+	 * @return whether a transaction is open, as tracked from the transaction
+	 *         control statements sent through this client.
+	 */
+	public boolean isInTransaction() {
+		return this.inTransaction;
+	}
+
+	public boolean isLazyDecode() {
+		return lazyDecode;
+	}
+
+	/**
+	 * @param lazyDecode keep the received rows encoded and decode each column only
+	 *                   as far as it is read, instead of decoding every value when
+	 *                   the response arrives.
+	 */
+	public void setLazyDecode(boolean lazyDecode) {
+		this.lazyDecode = lazyDecode;
+	}
+
+	/**
+	 * Serve identical SELECTs from the driver-wide {@link HAResultCache}. Results
+	 * are not cached inside transactions, nor for queries that are
+	 * {@link HAUtils#isVolatileQuery volatile}.
+	 *
+	 * @param maxBytes size budget of the cache, the largest budget requested by a
+	 *                 client applies
+	 * @param ttl      maximum age in milliseconds of a result served to this
+	 *                 client, 0 to disable the cache
+	 */
+	public void setResultCache(long maxBytes, long ttl) {
+		if (maxBytes > 0 && ttl > 0) {
+			HAResultCache.reserve(maxBytes);
+			this.resultCacheTtl = ttl;
+		} else {
+			this.resultCacheTtl = 0;
+		}
+	}
+
+	/**
+	 * @param checkInterval milliseconds during which the cached schema is used
+	 *                      without checking {@code PRAGMA schema_version}
+	 * @return the schema of the current database from the driver-wide
+	 *         {@link HAMetadataCache}, loaded by a single query when missing or
+	 *         outdated.
+	 */
+	public HAMetadataCache.Schema getSchema(long checkInterval, int timeout) throws SQLException {
+		return HAMetadataCache.get(this.endpoint, this.replicationID, checkInterval,
+				sql -> execute(sql, null, timeout));
+	}
+
+	private boolean isCacheable(String sql) {
+		return this.resultCacheTtl > 0 && !this.inTransaction && HAUtils.isSelectQuery(sql)
+				&& !HAUtils.isVolatileQuery(sql);
+	}
+
+	private HAExecutionResult cacheResult(String replicationID, String sql, Map<Object, Object> parameters,
+			long observedTxseq, QueryResponse response, HAExecutionResult result) {
+		// without a txseq in the response, the result is at least as recent as the
+		// sequence observed when the query was sent
+		long txseq = response.getTxseq() > 0 ? response.getTxseq() : observedTxseq;
+		// only decode a lazy result in full when it can be stored
+		if (!HAResultCache.fits(result.estimateSize() + sql.length() * 2L)) {
+			return result;
+		}
+		result.decodeAll();
+		result.share();
+		HAResultCache.put(this.endpoint, this.credential, replicationID, sql, parameters, result, txseq);
+		return result;
+	}
+
+	public boolean isVerifyDownloads() {
+		return verifyDownloads;
+	}
+
+	/**
+	 * @param verifyDownloads run {@code PRAGMA quick_check} on downloaded replicas
+	 *                        before moving them into place.
+	 */
+	public void setVerifyDownloads(boolean verifyDownloads) {
+		this.verifyDownloads = verifyDownloads;
+	}
+
+	/**
+	 * Follow explicit transactions, whose reads must not be served from the
+	 * result cache.
+	 */
+	private synchronized void trackTransaction(String sql) {
+		if (!HAUtils.isTransactionControlQuery(sql)) {
+			return;
+		}
+		String statement = sql.trim().toLowerCase();
+		if (statement.startsWith("begin")) {
+			this.inTransaction = true;
+			this.savepointTransaction = false;
+		} else if (statement.startsWith("savepoint")) {
+			// a savepoint outside of a transaction starts one
+			if (!this.inTransaction) {
+				this.inTransaction = true;
+				this.savepointTransaction = true;
+			}
+			this.savepoints.push(savepointName(statement.substring("savepoint".length())));
+		} else if (statement.startsWith("release")) {
+			String name = savepointName(statement.replaceFirst("^release\\s+(savepoint\\b)?", ""));
+			while (!this.savepoints.isEmpty() && !this.savepoints.pop().equals(name)) {
+				// releasing a savepoint also releases the ones opened after it
+			}
+			if (this.savepointTransaction && this.savepoints.isEmpty()) {
+				this.inTransaction = false;
+			}
+		} else if (!statement.matches("rollback\\s+(transaction\\s+)?to\\b.*")) {
+			// commit, end or rollback of the whole transaction
+			this.inTransaction = false;
+			this.savepoints.clear();
+		}
+	}
+
+	private static String savepointName(String name) {
+		return HAUtils.unquote(name.replaceAll(";\\s*$", "").trim());
+	}
+
+	/**
+	 * Drop the cached schema when a DDL statement is sent, and again when its
+	 * response arrives, as a schema loaded in between may predate the change.
+	 */
+	private void trackSchemaChange(String sql, CompletableFuture<QueryResponse> response) {
+		if (HAUtils.isSchemaChangeQuery(sql)) {
+			String endpoint = this.endpoint;
+			String replicationID = this.replicationID;
+			HAMetadataCache.invalidate(endpoint, replicationID);
+			response.whenComplete((result, e) -> HAMetadataCache.invalidate(endpoint, replicationID));
+		}
+	}
+
 	private boolean isIndexedParams(Map<Object, Object> parameter) {
 		if (!parameter.isEmpty()) {
 			return parameter.keySet().iterator().next() instanceof Integer;
@@ -295,9 +770,12 @@ public class HAClient {
 	}
 
 	public void close() {
-		this.requestObserver.onCompleted();
+		if (!this.pipeline.close()) {
+			return;
+		}
+		liveClients.remove(this);
 		if (this.channel != null) {
-			this.channel.shutdown();
+			HAChannelRegistry.release(this.channel);
 		}
 	}
 
@@ -0,0 +1,232 @@
+package com.github.litesql.jdbc.ha.client;
+
+import java.util.Arrays;
+
+import org.jkiss.utils.CommonUtils;
+
+/**
+ * Values of one result column. Columns holding only integers or only reals are
+ * stored in primitive arrays, with nulls tracked in a bitmap. SQLite columns
+ * are dynamically typed, so a column mixing storage classes falls back to
+ * boxed values.
+ *
+ * Integers received as 32-bit values are boxed back to {@link Integer} as long
+ * as the column holds no wider integer, so that {@code getObject} returns the
+ * same types as a row based result.
+ */
+final class HAColumn {
+
+	private static final int EMPTY = 0;
+	private static final int LONG = 1;
+	private static final int DOUBLE = 2;
+	private static final int OBJECT = 3;
+
+	private int kind = EMPTY;
+	/**
+	 * Whether a 64-bit integer was added, so that integers box to Long.
+	 */
+	private boolean wide;
+	private long[] longs;
+	private double[] doubles;
+	private Object[] objects;
+	private long[] nulls;
+	private int size;
+
+	HAColumn(int capacity) {
+		this.nulls = new long[Math.max(1, (capacity + 63) >>> 6)];
+		this.longs = new long[Math.max(capacity, 1)];
+	}
+
+	int size() {
+		return size;
+	}
+
+	void addNull() {
+		ensureCapacity();
+		this.nulls[size >>> 6] |= 1L << size;
+		if (kind == OBJECT) {
+			objects[size] = null;
+		}
+		size++;
+	}
+
+	void addLong(long value) {
+		if (kind == EMPTY) {
+			kind = LONG;
+		} else if (kind != LONG) {
+			addObject(value);
+			return;
+		}
+		ensureCapacity();
+		longs[size++] = value;
+		wide = true;
+	}
+
+	void addInt(int value) {
+		if (kind == EMPTY) {
+			kind = LONG;
+		} else if (kind != LONG) {
+			addObject(value);
+			return;
+		}
+		ensureCapacity();
+		longs[size++] = value;
+	}
+
+	void addDouble(double value) {
+		if (kind == EMPTY) {
+			kind = DOUBLE;
+			doubles = new double[longs.length];
+			longs = null;
+		} else if (kind != DOUBLE) {
+			addObject(value);
+			return;
+		}
+		ensureCapacity();
+		doubles[size++] = value;
+	}
+
+	void add(Object value) {
+		if (value == null) {
+			addNull();
+		} else if (value instanceof Integer) {
+			addInt((Integer) value);
+		} else if (value instanceof Long || value instanceof Short || value instanceof Byte) {
+			addLong(((Number) value).longValue());
+		} else if (value instanceof Double) {
+			addDouble((Double) value);
+		} else {
+			addObject(value);
+		}
+	}
+
+	private void addObject(Object value) {
+		if (kind != OBJECT) {
+			toObjects();
+		}
+		ensureCapacity();
+		objects[size++] = value;
+	}
+
+	private void toObjects() {
+		int capacity = kind == DOUBLE ? doubles.length : longs.length;
+		Object[] boxed = new Object[capacity];
+		for (int i = 0; i < size; i++) {
+			if (isNull(i)) {
+				continue;
+			}
+			boxed[i] = kind == DOUBLE ? (Object) doubles[i] : boxLong(longs[i]);
+		}
+		objects = boxed;
+		longs = null;
+		doubles = null;
+		kind = OBJECT;
+	}
+
+	private void ensureCapacity() {
+		if ((size >>> 6) >= nulls.length) {
+			nulls = Arrays.copyOf(nulls, nulls.length * 2);
+		}
+		switch (kind) {
+		case DOUBLE:
+			if (size >= doubles.length) {
+				doubles = Arrays.copyOf(doubles, doubles.length * 2);
+			}
+			break;
+		case OBJECT:
+			if (size >= objects.length) {
+				objects = Arrays.copyOf(objects, objects.length * 2);
+			}
+			break;
+		default:
+			if (size >= longs.length) {
+				longs = Arrays.copyOf(longs, longs.length * 2);
+			}
+		}
+	}
+
+	/**
+	 * @return a rough estimate of the memory used by the column, in bytes.
+	 */
+	long estimateSize() {
+		long size = 16 + nulls.length * 8L;
+		switch (kind) {
+		case DOUBLE:
+			return size + doubles.length * 8L;
+		case OBJECT:
+			size += objects.length * 8L;
+			for (int i = 0; i < this.size; i++) {
+				Object value = objects[i];
+				if (value instanceof String) {
+					size += 40 + ((String) value).length() * 2L;
+				} else if (value instanceof byte[]) {
+					size += 16 + ((byte[]) value).length;
+				} else if (value != null) {
+					size += 24;
+				}
+			}
+			return size;
+		default:
+			return size + longs.length * 8L;
+		}
+	}
+
+	boolean isNull(int row) {
+		return (nulls[row >>> 6] & (1L << row)) != 0;
+	}
+
+	Object getObject(int row) {
+		if (isNull(row)) {
+			return null;
+		}
+		switch (kind) {
+		case LONG:
+			return boxLong(longs[row]);
+		case DOUBLE:
+			return doubles[row];
+		case OBJECT:
+			return objects[row];
+		default:
+			return null;
+		}
+	}
+
+	private Object boxLong(long value) {
+		if (wide) {
+			return value;
+		}
+		return (int) value;
+	}
+
+	long getLong(int row) {
+		if (isNull(row)) {
+			return 0;
+		}
+		switch (kind) {
+		case LONG:
+			return longs[row];
+		case DOUBLE:
+			return (long) doubles[row];
+		case OBJECT:
+			return CommonUtils.toLong(objects[row]);
+		default:
+			return 0;
+		}
+	}
+
+	double getDouble(int row) {
+		if (isNull(row)) {
+			return 0;
+		}
+		switch (kind) {
+		case LONG:
+			return longs[row];
+		case DOUBLE:
+			return doubles[row];
+		case OBJECT:
+			return CommonUtils.toDouble(objects[row]);
+		default:
+			return 0;
+		}
+	}
+}
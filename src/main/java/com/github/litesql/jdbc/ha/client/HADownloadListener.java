@@ -0,0 +1,25 @@
+package com.github.litesql.jdbc.ha.client;
+
+/**
+ * Receives the progress of a multi-replica download. Methods are called from
+ * the download threads.
+ */
+public interface HADownloadListener {
+
+	/**
+	 * Called after each chunk written to disk.
+	 *
+	 * @param replicaBytes bytes written so far for this replica
+	 * @param totalBytes   bytes written so far for all replicas
+	 */
+	void onProgress(String replicationID, long replicaBytes, long totalBytes);
+
+	/**
+	 * Called when a replica is completely downloaded.
+	 *
+	 * @param completed replicas downloaded so far
+	 * @param total     replicas to download
+	 */
+	default void onDownloaded(String replicationID, int completed, int total) {
+	}
+}
@@ -0,0 +1,49 @@
+package com.github.litesql.jdbc.ha.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * Writes a streamed download to a file through a single {@link FileChannel}.
+ * Chunks are written from the buffers backing the received {@link ByteString}
+ * instead of being copied to byte arrays.
+ */
+final class HADownloadWriter implements AutoCloseable {
+
+	private final FileChannel channel;
+
+	HADownloadWriter(Path path) throws IOException {
+		Path parent = path.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	void write(ByteString data) throws IOException {
+		for (ByteBuffer buffer : data.asReadOnlyByteBufferList()) {
+			while (buffer.hasRemaining()) {
+				this.channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Flush the written data to the storage device.
+	 */
+	void sync() throws IOException {
+		this.channel.force(true);
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+}
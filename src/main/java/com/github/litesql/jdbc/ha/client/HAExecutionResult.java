@@ -1,31 +1,220 @@
 package com.github.litesql.jdbc.ha.client;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import com.google.protobuf.Any;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import build.buf.gen.sql.v1.Row;
+
+/**
+ * Result of a statement. Rows are stored by column, see {@link HAColumn}; the
+ * typed getters read primitive values without boxing.
+ *
+ * A result built from encoded rows decodes a column on access, up to the row
+ * being read, so columns and trailing rows that are never read are never
+ * decoded. Such a result must not be read from several threads at once.
+ */
 public class HAExecutionResult {
 
 	private List<String> columns = new ArrayList<>();
-	private List<Object[]> rows = new ArrayList<>();
+	private HAColumn[] data = new HAColumn[0];
+	private int capacity;
+	private int rowCount;
+	private List<Object[]> rows;
 	private long rowsAffected;
 
+	private List<Row> encodedRows;
+	private ByteString[] typeUrls;
+	private Converter.ValueType[] types;
+
+	/**
+	 * Set once the result is held by the {@link HAResultCache}, after which
+	 * blobs are copied on the way out so readers cannot change each other's data.
+	 */
+	private volatile boolean shared;
+
 	public HAExecutionResult(List<String> columns, List<Object[]> rows) {
+		this(columns, rows.size());
+		for (Object[] row : rows) {
+			for (int i = 0; i < this.data.length; i++) {
+				getColumn(i).add(i < row.length ? row[i] : null);
+			}
+		}
+		this.rowCount = rows.size();
+	}
+
+	/**
+	 * Columns are allocated on first use, so that a lazily decoded result only
+	 * holds the columns that are read.
+	 */
+	HAExecutionResult(List<String> columns, int capacity) {
 		this.columns = columns;
-		this.rows = rows;
+		this.data = new HAColumn[columns.size()];
+		this.capacity = capacity;
+		this.typeUrls = new ByteString[this.data.length];
+		this.types = new Converter.ValueType[this.data.length];
 	}
 
 	public HAExecutionResult(long rowsAffected) {
 		this.rowsAffected = rowsAffected;
 	}
 
+	HAColumn getColumn(int column) {
+		HAColumn values = this.data[column];
+		if (values == null) {
+			values = new HAColumn(this.capacity);
+			this.data[column] = values;
+		}
+		return values;
+	}
+
+	void setRowCount(int rowCount) {
+		this.rowCount = rowCount;
+	}
+
+	void setEncodedRows(List<Row> encodedRows) {
+		this.encodedRows = encodedRows;
+		this.rowCount = encodedRows.size();
+	}
+
+	/**
+	 * Decode one value of an encoded row and append it to its column.
+	 */
+	void decode(Row row, int column) throws InvalidProtocolBufferException {
+		HAColumn values = getColumn(column);
+		if (column >= row.getValuesCount()) {
+			values.addNull();
+			return;
+		}
+		Any value = row.getValues(column);
+		// cells of a column usually share one type, only resolve it when it changes;
+		// the bytes are compared so that no String is built per cell
+		ByteString typeUrl = value.getTypeUrlBytes();
+		if (!typeUrl.equals(this.typeUrls[column])) {
+			this.types[column] = Converter.ValueType.of(typeUrl);
+			this.typeUrls[column] = typeUrl;
+		}
+		Converter.decode(this.types[column], value.getValue(), values);
+	}
+
+	/**
+	 * Decode all values of a result built from encoded rows, so that it can be
+	 * shared between threads.
+	 */
+	void decodeAll() {
+		if (this.encodedRows == null) {
+			return;
+		}
+		for (int c = 0; c < this.data.length; c++) {
+			column(this.rowCount - 1, c);
+		}
+		this.encodedRows = null;
+	}
+
+	/**
+	 * Mark a fully decoded result as shared by several readers.
+	 */
+	void share() {
+		this.shared = true;
+	}
+
+	/**
+	 * @return a rough estimate of the memory used by the result, in bytes. Rows
+	 *         still encoded count for their encoded size, a lower bound of their
+	 *         decoded size.
+	 */
+	long estimateSize() {
+		long size = 64;
+		for (int i = 0; i < this.data.length; i++) {
+			size += 40 + this.columns.get(i).length() * 2L;
+			if (this.data[i] != null) {
+				size += this.data[i].estimateSize();
+			}
+		}
+		if (this.encodedRows != null) {
+			for (Row row : this.encodedRows) {
+				size += row.getSerializedSize();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return the column, decoded at least up to {@code row}.
+	 */
+	private HAColumn column(int row, int column) {
+		HAColumn values = getColumn(column);
+		if (this.encodedRows != null) {
+			try {
+				for (int r = values.size(); r <= row; r++) {
+					decode(this.encodedRows.get(r), column);
+				}
+			} catch (InvalidProtocolBufferException e) {
+				throw new IllegalStateException("Invalid value in column " + this.columns.get(column), e);
+			}
+		}
+		return values;
+	}
+
 	public List<String> getColumns() {
 		return columns;
 	}
 
-	public List<Object[]> getRows() {
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @return the rows as boxed values, unmodifiable. Prefer the typed getters,
+	 *         this copies the columnar data on first use, and on every call for a
+	 *         cached result.
+	 */
+	public synchronized List<Object[]> getRows() {
+		if (rows == null || shared) {
+			List<Object[]> boxed = new ArrayList<>(rowCount);
+			for (int r = 0; r < rowCount; r++) {
+				Object[] row = new Object[data.length];
+				for (int c = 0; c < data.length; c++) {
+					row[c] = getObject(r, c);
+				}
+				boxed.add(row);
+			}
+			if (shared) {
+				return Collections.unmodifiableList(boxed);
+			}
+			rows = Collections.unmodifiableList(boxed);
+		}
 		return rows;
 	}
 
+	/**
+	 * @param row    0-based row index
+	 * @param column 0-based column index
+	 */
+	public Object getObject(int row, int column) {
+		Object value = column(row, column).getObject(row);
+		if (shared && value instanceof byte[]) {
+			return ((byte[]) value).clone();
+		}
+		return value;
+	}
+
+	public boolean isNull(int row, int column) {
+		return column(row, column).isNull(row);
+	}
+
+	public long getLong(int row, int column) {
+		return column(row, column).getLong(row);
+	}
+
+	public double getDouble(int row, int column) {
+		return column(row, column).getDouble(row);
+	}
+
 	public long getRowsAffected() {
 		return this.rowsAffected;
 	}
@@ -0,0 +1,371 @@
+package com.github.litesql.jdbc.ha.client;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Driver-wide cache of database schemas, used to answer
+ * {@link java.sql.DatabaseMetaData} calls without a query per table.
+ *
+ * The tables, columns, indexes and foreign keys of a database are loaded by a
+ * single query over the pragma table-valued functions. A schema is dropped
+ * when a DDL statement is sent through the driver, and reloaded when
+ * {@code PRAGMA schema_version} no longer matches, which is checked at most
+ * once per check interval.
+ *
+ * Schemas read from an embedded replica are cached apart from the ones read
+ * from the server and checked on every use, as the check is a local query.
+ */
+public final class HAMetadataCache {
+
+	/**
+	 * Runs a query on the database a schema is read from.
+	 */
+	@FunctionalInterface
+	public interface Source {
+		/**
+		 * @return the result, or {@code null} if the source is no longer available.
+		 */
+		HAExecutionResult query(String sql) throws SQLException;
+	}
+
+	private static final String SCHEMA_QUERY = "SELECT 't' AS kind, name AS tbl, NULL AS name, type, sql, "
+			+ "NULL AS n1, NULL AS n2, NULL AS n3, NULL AS s1, NULL AS s2, NULL AS s3, NULL AS s4, NULL AS s5 "
+			+ "FROM sqlite_master WHERE type IN ('table', 'view') "
+			+ "UNION ALL SELECT 'c', m.name, p.name, p.type, NULL, p.cid, p.\"notnull\", p.pk, p.dflt_value, "
+			+ "NULL, NULL, NULL, NULL FROM sqlite_master m JOIN pragma_table_info(m.name) p WHERE m.type = 'table' "
+			+ "UNION ALL SELECT 'i', m.name, il.name, NULL, NULL, il.seq, ii.seqno, il.\"unique\", ii.name, "
+			+ "NULL, NULL, NULL, NULL FROM sqlite_master m JOIN pragma_index_list(m.name) il "
+			+ "JOIN pragma_index_info(il.name) ii WHERE m.type = 'table' "
+			+ "UNION ALL SELECT 'f', m.name, fk.\"table\", NULL, NULL, fk.id, fk.seq, NULL, fk.\"from\", fk.\"to\", "
+			+ "fk.on_update, fk.on_delete, fk.\"match\" FROM sqlite_master m JOIN pragma_foreign_key_list(m.name) fk "
+			+ "WHERE m.type = 'table' "
+			+ "UNION ALL SELECT 'v', NULL, NULL, NULL, NULL, schema_version, NULL, NULL, NULL, NULL, NULL, NULL, NULL "
+			+ "FROM pragma_schema_version ORDER BY 1, 2, 6, 7";
+
+	private static final Map<String, Schema> schemas = new ConcurrentHashMap<>();
+
+	/**
+	 * Incremented by every invalidation, so that a schema loaded concurrently with
+	 * a DDL statement is not cached.
+	 */
+	private static final AtomicLong generation = new AtomicLong();
+
+	private HAMetadataCache() {
+	}
+
+	/**
+	 * @param checkInterval milliseconds during which a cached schema is used
+	 *                      without checking {@code PRAGMA schema_version}
+	 */
+	static Schema get(String endpoint, String replicationID, long checkInterval, Source source)
+			throws SQLException {
+		return get(endpoint + "/" + replicationID, checkInterval, source);
+	}
+
+	/**
+	 * @param dsn    the replica file, as several may hold the same database
+	 * @param source queries the embedded replica of the database
+	 * @return the schema of the replica, or {@code null} if the source is no
+	 *         longer available.
+	 */
+	public static Schema getReplicaSchema(String dsn, String replicationID, Source source) throws SQLException {
+		return get("replica/" + dsn + "/" + replicationID, 0, source);
+	}
+
+	private static Schema get(String key, long checkInterval, Source source) throws SQLException {
+		Schema schema = schemas.get(key);
+		if (schema != null) {
+			long now = System.currentTimeMillis();
+			if (now - schema.checkedAt < checkInterval) {
+				return schema;
+			}
+			HAExecutionResult version = source.query("PRAGMA schema_version");
+			if (version == null) {
+				return null;
+			}
+			if (version.getRowCount() > 0 && version.getLong(0, 0) == schema.version) {
+				schema.checkedAt = now;
+				return schema;
+			}
+		}
+		long loadGeneration = generation.get();
+		HAExecutionResult result = source.query(SCHEMA_QUERY);
+		if (result == null) {
+			return null;
+		}
+		schema = load(result);
+		if (generation.get() == loadGeneration) {
+			schemas.put(key, schema);
+		}
+		return schema;
+	}
+
+	static void invalidate(String endpoint, String replicationID) {
+		generation.incrementAndGet();
+		schemas.remove(endpoint + "/" + replicationID);
+		schemas.keySet().removeIf(key -> key.startsWith("replica/") && key.endsWith("/" + replicationID));
+	}
+
+	/**
+	 * Drop the cached schema of a database, for example after a change made by
+	 * another client.
+	 */
+	public static void invalidate(String replicationID) {
+		generation.incrementAndGet();
+		schemas.keySet().removeIf(key -> key.endsWith("/" + replicationID));
+	}
+
+	public static void clear() {
+		generation.incrementAndGet();
+		schemas.clear();
+	}
+
+	private static Schema load(HAExecutionResult result) {
+		Schema schema = new Schema();
+		for (int r = 0; r < result.getRowCount(); r++) {
+			String kind = (String) result.getObject(r, 0);
+			if ("v".equals(kind)) {
+				schema.version = result.getLong(r, 5);
+				continue;
+			}
+			String tableName = (String) result.getObject(r, 1);
+			Table table = schema.tables.computeIfAbsent(tableName, Table::new);
+			switch (kind) {
+			case "t":
+				table.type = (String) result.getObject(r, 3);
+				table.sql = (String) result.getObject(r, 4);
+				break;
+			case "c":
+				table.columns.add(new Column((String) result.getObject(r, 2), (String) result.getObject(r, 3),
+						result.getLong(r, 6) != 0, (String) result.getObject(r, 8), (int) result.getLong(r, 7)));
+				break;
+			case "i":
+				String indexName = (String) result.getObject(r, 2);
+				Index index = table.indexes.isEmpty() ? null : table.indexes.get(table.indexes.size() - 1);
+				if (index == null || !index.name.equals(indexName)) {
+					index = new Index(indexName, result.getLong(r, 7) != 0);
+					table.indexes.add(index);
+				}
+				index.columns.add((String) result.getObject(r, 8));
+				break;
+			case "f":
+				table.foreignKeys.add(new ForeignKey((int) result.getLong(r, 5), (int) result.getLong(r, 6),
+						(String) result.getObject(r, 2), (String) result.getObject(r, 8),
+						(String) result.getObject(r, 9), (String) result.getObject(r, 10),
+						(String) result.getObject(r, 11), (String) result.getObject(r, 12)));
+				break;
+			default:
+			}
+		}
+		schema.checkedAt = System.currentTimeMillis();
+		return schema;
+	}
+
+	/**
+	 * Snapshot of a database schema. Table names are case insensitive.
+	 */
+	public static final class Schema {
+		private final Map<String, Table> tables = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		private long version;
+		private volatile long checkedAt;
+
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * @return the tables and views, ordered by name.
+		 */
+		public Collection<Table> getTables() {
+			return Collections.unmodifiableCollection(tables.values());
+		}
+
+		/**
+		 * @return the table or view, or {@code null} if it does not exist.
+		 */
+		public Table getTable(String name) {
+			return name == null ? null : tables.get(name);
+		}
+	}
+
+	public static final class Table {
+		private final String name;
+		private String type;
+		private String sql;
+		private final List<Column> columns = new ArrayList<>();
+		private final List<Index> indexes = new ArrayList<>();
+		private final List<ForeignKey> foreignKeys = new ArrayList<>();
+
+		Table(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		public String getSql() {
+			return sql;
+		}
+
+		/**
+		 * @return the columns as returned by {@code pragma table_info}.
+		 */
+		public List<Column> getColumns() {
+			return Collections.unmodifiableList(columns);
+		}
+
+		/**
+		 * @return the indexes as returned by {@code pragma index_list}.
+		 */
+		public List<Index> getIndexes() {
+			return Collections.unmodifiableList(indexes);
+		}
+
+		/**
+		 * @return the rows of {@code pragma foreign_key_list}.
+		 */
+		public List<ForeignKey> getForeignKeys() {
+			return Collections.unmodifiableList(foreignKeys);
+		}
+	}
+
+	public static final class Column {
+		private final String name;
+		private final String type;
+		private final boolean notNull;
+		private final String defaultValue;
+		private final int primaryKey;
+
+		Column(String name, String type, boolean notNull, String defaultValue, int primaryKey) {
+			this.name = name;
+			this.type = type;
+			this.notNull = notNull;
+			this.defaultValue = defaultValue;
+			this.primaryKey = primaryKey;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		public boolean isNotNull() {
+			return notNull;
+		}
+
+		public String getDefaultValue() {
+			return defaultValue;
+		}
+
+		/**
+		 * @return the 1-based position of the column in the primary key, 0 if it is
+		 *         not part of it.
+		 */
+		public int getPrimaryKey() {
+			return primaryKey;
+		}
+	}
+
+	public static final class Index {
+		private final String name;
+		private final boolean unique;
+		private final List<String> columns = new ArrayList<>();
+
+		Index(String name, boolean unique) {
+			this.name = name;
+			this.unique = unique;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isUnique() {
+			return unique;
+		}
+
+		/**
+		 * @return the indexed columns in order, {@code null} for an expression.
+		 */
+		public List<String> getColumns() {
+			return Collections.unmodifiableList(columns);
+		}
+	}
+
+	public static final class ForeignKey {
+		private final int id;
+		private final int seq;
+		private final String table;
+		private final String from;
+		private final String to;
+		private final String onUpdate;
+		private final String onDelete;
+		private final String match;
+
+		ForeignKey(int id, int seq, String table, String from, String to, String onUpdate, String onDelete,
+				String match) {
+			this.id = id;
+			this.seq = seq;
+			this.table = table;
+			this.from = from;
+			this.to = to;
+			this.onUpdate = onUpdate;
+			this.onDelete = onDelete;
+			this.match = match;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public int getSeq() {
+			return seq;
+		}
+
+		/**
+		 * @return the referenced table.
+		 */
+		public String getTable() {
+			return table;
+		}
+
+		public String getFrom() {
+			return from;
+		}
+
+		/**
+		 * @return the referenced column, {@code null} for the primary key.
+		 */
+		public String getTo() {
+			return to;
+		}
+
+		public String getOnUpdate() {
+			return onUpdate;
+		}
+
+		public String getOnDelete() {
+			return onDelete;
+		}
+
+		public String getMatch() {
+			return match;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.github.litesql.jdbc.ha.client;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import build.buf.gen.sql.v1.QueryRequest;
+import build.buf.gen.sql.v1.QueryResponse;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Requests of a query stream. The server answers the requests of a stream in
+ * order, so a response belongs to the oldest in-flight request. Up to
+ * {@code maxPendingRequests} requests are written ahead of their responses,
+ * the following ones wait in a queue until a response frees a slot.
+ */
+final class HAQueryPipeline {
+
+	/**
+	 * A request written (or waiting to be written) to the query stream.
+	 */
+	static final class PendingQuery {
+		final QueryRequest request;
+		final CompletableFuture<QueryResponse> response = new CompletableFuture<>();
+
+		PendingQuery(QueryRequest request) {
+			this.request = request;
+		}
+	}
+
+	private final StreamObserver<QueryRequest> stream;
+	private final int maxPendingRequests;
+	private final Deque<PendingQuery> inflight = new ArrayDeque<>();
+	private final Deque<PendingQuery> queued = new ArrayDeque<>();
+	private boolean broken;
+	private boolean closed;
+
+	HAQueryPipeline(StreamObserver<QueryRequest> stream, int maxPendingRequests) {
+		this.stream = stream;
+		this.maxPendingRequests = Math.max(1, maxPendingRequests);
+	}
+
+	/**
+	 * Write the request, or queue it if the pipeline is full. Fails the request
+	 * if the stream is closed or broken.
+	 */
+	synchronized void send(PendingQuery query) {
+		if (this.closed) {
+			query.response.completeExceptionally(new SQLException("connection closed"));
+		} else if (this.broken) {
+			query.response.completeExceptionally(new SQLException("bad connection"));
+		} else if (this.inflight.size() < this.maxPendingRequests) {
+			this.inflight.addLast(query);
+			this.stream.onNext(query.request);
+		} else {
+			this.queued.addLast(query);
+		}
+	}
+
+	/**
+	 * Take the request answered by a response and write the oldest queued
+	 * request in its place.
+	 *
+	 * @return the answered request, or {@code null} if none is in flight.
+	 */
+	synchronized PendingQuery poll() {
+		PendingQuery query = this.inflight.pollFirst();
+		PendingQuery next = this.queued.pollFirst();
+		if (next != null) {
+			this.inflight.addLast(next);
+			this.stream.onNext(next.request);
+		}
+		return query;
+	}
+
+	/**
+	 * Fail the in-flight and queued requests, and the ones sent afterwards.
+	 */
+	void fail(Throwable t) {
+		List<PendingQuery> failed;
+		synchronized (this) {
+			this.broken = true;
+			failed = new ArrayList<>(this.inflight);
+			failed.addAll(this.queued);
+			this.inflight.clear();
+			this.queued.clear();
+		}
+		for (PendingQuery query : failed) {
+			query.response.completeExceptionally(new SQLException(t.getMessage(), t));
+		}
+	}
+
+	synchronized boolean hasPendingRequests() {
+		return !this.inflight.isEmpty();
+	}
+
+	/**
+	 * Complete the stream; requests sent afterwards fail.
+	 *
+	 * @return {@code false} if it was already closed.
+	 */
+	synchronized boolean close() {
+		if (this.closed) {
+			return false;
+		}
+		this.closed = true;
+		this.stream.onCompleted();
+		return true;
+	}
+}
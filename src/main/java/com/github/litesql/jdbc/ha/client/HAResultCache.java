@@ -0,0 +1,298 @@
+package com.github.litesql.jdbc.ha.client;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Driver-wide cache of SELECT results. An entry is served while no newer
+ * txseq has been observed for its database and it is younger than the time
+ * to live of the reading connection. Entries are evicted least recently used
+ * first once their estimated size exceeds the budget.
+ *
+ * Entries are spread over segments, each an access-ordered map guarded by its
+ * own lock, so lookups of different keys rarely contend. Eviction pops the
+ * eldest entry of the segment holding the least recently used one.
+ *
+ * Entries are scoped to the credentials of the connection that read them, so
+ * a result is never served to a connection authenticated differently.
+ *
+ * Only changes observed by this driver invalidate entries: the time to live
+ * bounds the staleness caused by writes of other clients.
+ */
+public final class HAResultCache {
+
+	private static final class Key {
+		final String endpoint;
+		final String credential;
+		final String replicationID;
+		final String sql;
+		final Object[] parameters;
+		final int hash;
+
+		Key(String endpoint, String credential, String replicationID, String sql, Map<Object, Object> parameters) {
+			this.endpoint = endpoint;
+			this.credential = credential;
+			this.replicationID = replicationID;
+			this.sql = sql;
+			this.parameters = new Object[parameters == null ? 0 : parameters.size() * 2];
+			if (parameters != null) {
+				int i = 0;
+				for (Map.Entry<Object, Object> parameter : parameters.entrySet()) {
+					this.parameters[i++] = parameter.getKey();
+					this.parameters[i++] = parameter.getValue();
+				}
+			}
+			this.hash = 31 * (31 * (31 * (31 * endpoint.hashCode() + credential.hashCode()) + replicationID.hashCode())
+					+ sql.hashCode()) + Arrays.deepHashCode(this.parameters);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return this.hash == other.hash && this.sql.equals(other.sql)
+					&& this.replicationID.equals(other.replicationID) && this.endpoint.equals(other.endpoint)
+					&& this.credential.equals(other.credential)
+					&& Arrays.deepEquals(this.parameters, other.parameters);
+		}
+	}
+
+	private static final class Entry {
+		final HAExecutionResult result;
+		final long txseq;
+		final long createdAt = System.currentTimeMillis();
+		final long size;
+		long lastAccess = clock.incrementAndGet();
+
+		Entry(HAExecutionResult result, long txseq, long size) {
+			this.result = result;
+			this.txseq = txseq;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Entries of the keys hashing to it, eldest access first. Guarded by itself.
+	 */
+	private static final class Segment extends LinkedHashMap<Key, Entry> {
+		private static final long serialVersionUID = 1;
+
+		Segment() {
+			super(16, 0.75f, true);
+		}
+	}
+
+	private static final int SEGMENTS = 16;
+
+	/**
+	 * Logical clock ordering accesses across segments.
+	 */
+	private static final AtomicLong clock = new AtomicLong();
+
+	private static final Segment[] segments = new Segment[SEGMENTS];
+	private static final AtomicLong bytes = new AtomicLong();
+	private static final Object evictionLock = new Object();
+	private static volatile long maxBytes;
+
+	static {
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment();
+		}
+	}
+
+	/**
+	 * Highest txseq observed per endpoint and replication ID.
+	 */
+	private static final Map<String, Long> observed = new ConcurrentHashMap<>();
+
+	private HAResultCache() {
+	}
+
+	static boolean isEnabled() {
+		return maxBytes > 0;
+	}
+
+	/**
+	 * Grow the size budget of the cache; the largest budget requested by a
+	 * connection applies.
+	 */
+	static synchronized void reserve(long size) {
+		if (size > maxBytes) {
+			maxBytes = size;
+		}
+	}
+
+	/**
+	 * @return whether an entry of the given estimated size fits in the budget.
+	 */
+	static boolean fits(long size) {
+		return size <= maxBytes;
+	}
+
+	/**
+	 * @return the identity of a token in cache keys: a digest, so that the
+	 *         token itself is not kept by the cache.
+	 */
+	static String credentialOf(String token) {
+		if (token == null || token.isEmpty()) {
+			return "";
+		}
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+			return Base64.getEncoder().encodeToString(digest);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static void observe(String endpoint, String replicationID, long txseq) {
+		observed.merge(endpoint + "/" + replicationID, txseq, Math::max);
+	}
+
+	static long observed(String endpoint, String replicationID) {
+		return observed.getOrDefault(endpoint + "/" + replicationID, 0L);
+	}
+
+	/**
+	 * @param credential the {@link #credentialOf credential} of the reader
+	 */
+	static HAExecutionResult get(String endpoint, String credential, String replicationID, String sql,
+			Map<Object, Object> parameters, long ttl) {
+		Key key = new Key(endpoint, credential, replicationID, sql, parameters);
+		long minTxseq = observed(endpoint, replicationID);
+		Segment segment = segment(key);
+		synchronized (segment) {
+			Entry entry = segment.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.txseq < minTxseq || System.currentTimeMillis() - entry.createdAt > ttl) {
+				segment.remove(key);
+				bytes.addAndGet(-entry.size);
+				return null;
+			}
+			entry.lastAccess = clock.incrementAndGet();
+			return entry.result;
+		}
+	}
+
+	/**
+	 * @param result a fully decoded result, shared by all readers of the entry
+	 * @param txseq  the database sequence the result is known to reflect
+	 */
+	static void put(String endpoint, String credential, String replicationID, String sql,
+			Map<Object, Object> parameters, HAExecutionResult result, long txseq) {
+		long size = result.estimateSize() + sql.length() * 2L;
+		if (size > maxBytes || txseq < observed(endpoint, replicationID)) {
+			return;
+		}
+		Entry entry = new Entry(result, txseq, size);
+		Key key = new Key(endpoint, credential, replicationID, sql, parameters);
+		Segment segment = segment(key);
+		Entry previous;
+		synchronized (segment) {
+			previous = segment.put(key, entry);
+		}
+		long total = bytes.addAndGet(previous == null ? size : size - previous.size);
+		if (total > maxBytes) {
+			evict();
+		}
+	}
+
+	private static Segment segment(Key key) {
+		return segments[(key.hash ^ (key.hash >>> 16)) & (SEGMENTS - 1)];
+	}
+
+	/**
+	 * Drop the least recently used entries until the cache fits its budget. The
+	 * least recently used entry is the eldest of one of the segments, so each
+	 * step only compares the eldest entries.
+	 */
+	private static void evict() {
+		synchronized (evictionLock) {
+			while (bytes.get() > maxBytes) {
+				Segment oldest = null;
+				long oldestAccess = Long.MAX_VALUE;
+				for (Segment segment : segments) {
+					synchronized (segment) {
+						if (!segment.isEmpty()) {
+							long access = segment.values().iterator().next().lastAccess;
+							if (access < oldestAccess) {
+								oldest = segment;
+								oldestAccess = access;
+							}
+						}
+					}
+				}
+				if (oldest == null) {
+					return;
+				}
+				synchronized (oldest) {
+					Iterator<Entry> eldest = oldest.values().iterator();
+					if (eldest.hasNext()) {
+						bytes.addAndGet(-eldest.next().size);
+						eldest.remove();
+					}
+				}
+			}
+		}
+	}
+
+	private static void removeIf(Predicate<Key> filter) {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				Iterator<Map.Entry<Key, Entry>> it = segment.entrySet().iterator();
+				while (it.hasNext()) {
+					Map.Entry<Key, Entry> entry = it.next();
+					if (filter.test(entry.getKey())) {
+						bytes.addAndGet(-entry.getValue().size);
+						it.remove();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drop the cached results of a database.
+	 */
+	public static void invalidate(String replicationID) {
+		removeIf(key -> key.replicationID.equals(replicationID));
+	}
+
+	/**
+	 * Drop the cached results of a database whose SQL mentions a table.
+	 */
+	public static void invalidateTable(String replicationID, String table) {
+		Pattern name = Pattern.compile("(?<![\\w$])" + Pattern.quote(table) + "(?![\\w$])", Pattern.CASE_INSENSITIVE);
+		removeIf(key -> key.replicationID.equals(replicationID) && name.matcher(key.sql).find());
+	}
+
+	public static void clear() {
+		removeIf(key -> true);
+	}
+
+	/**
+	 * @return the estimated size in bytes of the cached results.
+	 */
+	public static long size() {
+		return bytes.get();
+	}
+}
@@ -0,0 +1,140 @@
+package com.github.litesql.jdbc.ha;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.litesql.jdbc.ha.client.HAExecutionResult;
+
+public class HACursorTest {
+
+	private static final Pattern PAGE_PATTERN = Pattern.compile("\nLIMIT (\\d+) OFFSET (\\d+)$");
+
+	/**
+	 * A table of {@code rows} rows answering the paged queries it receives.
+	 */
+	private static class PagedTable implements HACursor.PageSource {
+		final int rows;
+		final List<String> sent = new ArrayList<>();
+		final List<Map<Object, Object>> parameters = new ArrayList<>();
+
+		PagedTable(int rows) {
+			this.rows = rows;
+		}
+
+		@Override
+		public CompletableFuture<HAExecutionResult> send(String sql, Map<Object, Object> parameters) {
+			this.sent.add(sql);
+			this.parameters.add(parameters);
+			Matcher page = PAGE_PATTERN.matcher(sql);
+			assertTrue(page.find(), sql);
+			long limit = Long.parseLong(page.group(1));
+			long offset = Long.parseLong(page.group(2));
+			List<Object[]> values = new ArrayList<>();
+			for (long i = offset; i < Math.min(this.rows, offset + limit); i++) {
+				values.add(new Object[] { i });
+			}
+			return CompletableFuture.completedFuture(new HAExecutionResult(Arrays.asList("id"), values));
+		}
+	}
+
+	private static List<Long> readAll(HACursor cursor) throws SQLException {
+		List<Long> ids = new ArrayList<>();
+		HAExecutionResult page;
+		while ((page = cursor.next(0)) != null) {
+			for (int r = 0; r < page.getRowCount(); r++) {
+				ids.add(page.getLong(r, 0));
+			}
+		}
+		return ids;
+	}
+
+	@Test
+	public void readsPagesInOrder() throws Exception {
+		PagedTable table = new PagedTable(5);
+		HACursor cursor = new HACursor(table, "select id from t order by id", null, 2);
+		// the first page is requested up front
+		assertEquals(Arrays.asList("select id from t order by id\nLIMIT 2 OFFSET 0"), table.sent);
+		assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L), readAll(cursor));
+		assertEquals(Arrays.asList("select id from t order by id\nLIMIT 2 OFFSET 0",
+				"select id from t order by id\nLIMIT 2 OFFSET 2", "select id from t order by id\nLIMIT 2 OFFSET 4"),
+				table.sent);
+		assertNull(cursor.next(0));
+	}
+
+	@Test
+	public void prefetchesNextPageAfterFullPage() throws Exception {
+		PagedTable table = new PagedTable(10);
+		HACursor cursor = new HACursor(table, "select id from t", null, 3);
+		assertEquals(3, cursor.next(0).getRowCount());
+		assertEquals(2, table.sent.size());
+		assertTrue(table.sent.get(1).endsWith("\nLIMIT 3 OFFSET 3"));
+	}
+
+	@Test
+	public void endsWithEmptyPageOnExactMultiple() throws Exception {
+		PagedTable table = new PagedTable(4);
+		HACursor cursor = new HACursor(table, "select id from t", null, 2);
+		assertEquals(Arrays.asList(0L, 1L, 2L, 3L), readAll(cursor));
+		assertEquals(3, table.sent.size());
+	}
+
+	@Test
+	public void appendsAfterTerminatorAndComment() throws Exception {
+		PagedTable table = new PagedTable(0);
+		new HACursor(table, "  select id from t ; ;\n", null, 10);
+		new HACursor(table, "select id from t -- newest first", null, 10);
+		assertEquals(Arrays.asList("select id from t\nLIMIT 10 OFFSET 0",
+				"select id from t -- newest first\nLIMIT 10 OFFSET 0"), table.sent);
+	}
+
+	@Test
+	public void sendsParametersWithEveryPage() throws Exception {
+		PagedTable table = new PagedTable(3);
+		Map<Object, Object> parameters = new HashMap<>();
+		parameters.put(1, "a");
+		HACursor cursor = new HACursor(table, "select id from t where v = ?", parameters, 2);
+		// the statement may be reused with other parameters while the cursor is open
+		parameters.put(1, "b");
+		readAll(cursor);
+		assertEquals(2, table.parameters.size());
+		for (Map<Object, Object> sent : table.parameters) {
+			assertEquals("a", sent.get(1));
+		}
+		assertSame(table.parameters.get(0), table.parameters.get(1));
+	}
+
+	@Test
+	public void reportsPageFailure() throws Exception {
+		SQLException failure = new SQLException("no such table: t");
+		HACursor cursor = new HACursor((sql, parameters) -> {
+			CompletableFuture<HAExecutionResult> response = new CompletableFuture<>();
+			response.completeExceptionally(failure);
+			return response;
+		}, "select id from t", null, 2);
+		assertSame(failure, assertThrows(SQLException.class, () -> cursor.next(0)));
+	}
+
+	@Test
+	public void pagesOnlyQueriesWithoutLimit() {
+		assertTrue(HACursor.canPage("select id from t order by id"));
+		assertTrue(HACursor.canPage("select limited from t"));
+		assertFalse(HACursor.canPage("select id from t LIMIT 5"));
+		assertFalse(HACursor.canPage("select id from t limit 5 offset 10"));
+	}
+}
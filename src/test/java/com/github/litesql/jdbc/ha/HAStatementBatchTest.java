@@ -0,0 +1,96 @@
+package com.github.litesql.jdbc.ha;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.litesql.jdbc.ha.client.HAExecutionResult;
+
+public class HAStatementBatchTest {
+
+	/**
+	 * Records the statements of a batch; statements containing "fail" fail.
+	 */
+	private static class RecordingTarget implements HAStatement.BatchTarget {
+		final List<String> sent = new ArrayList<>();
+
+		@Override
+		public void control(String sql) throws SQLException {
+			this.sent.add(sql);
+		}
+
+		@Override
+		public CompletableFuture<HAExecutionResult> send(String sql, Map<Object, Object> parameters) {
+			this.sent.add(sql);
+			CompletableFuture<HAExecutionResult> response = new CompletableFuture<>();
+			if (sql.contains("fail")) {
+				response.completeExceptionally(new SQLException("constraint failed", "23000", 19));
+			} else {
+				response.complete(new HAExecutionResult(1));
+			}
+			return response;
+		}
+	}
+
+	private static int[] run(RecordingTarget target, boolean transaction, String... queries) throws SQLException {
+		List<Map<Object, Object>> parameters = new ArrayList<>();
+		for (int i = 0; i < queries.length; i++) {
+			parameters.add(null);
+		}
+		return HAStatement.executeBatch(target, Arrays.asList(queries), parameters, transaction, 0);
+	}
+
+	@Test
+	public void commitsOwnTransaction() throws Exception {
+		RecordingTarget target = new RecordingTarget();
+		assertArrayEquals(new int[] { 1, 1 }, run(target, true, "insert 1", "insert 2"));
+		assertEquals(Arrays.asList("BEGIN", "insert 1", "insert 2", "COMMIT"), target.sent);
+	}
+
+	@Test
+	public void joinsOpenTransaction() throws Exception {
+		RecordingTarget target = new RecordingTarget();
+		assertArrayEquals(new int[] { 1 }, run(target, false, "insert 1"));
+		assertEquals(Arrays.asList("insert 1"), target.sent);
+	}
+
+	@Test
+	public void rollsBackOnFailure() {
+		RecordingTarget target = new RecordingTarget();
+		BatchUpdateException e = assertThrows(BatchUpdateException.class,
+				() -> run(target, true, "insert 1", "insert fail", "insert 3"));
+		assertArrayEquals(new int[] { 1, Statement.EXECUTE_FAILED, 1 }, e.getUpdateCounts());
+		assertEquals("23000", e.getSQLState());
+		assertEquals(Arrays.asList("BEGIN", "insert 1", "insert fail", "insert 3", "ROLLBACK"), target.sent);
+	}
+
+	@Test
+	public void keepsBatchFailureWhenRollbackFails() {
+		SQLException rollbackFailure = new SQLException("connection lost");
+		RecordingTarget failing = new RecordingTarget() {
+			@Override
+			public void control(String sql) throws SQLException {
+				this.sent.add(sql);
+				if (sql.equals("ROLLBACK")) {
+					throw rollbackFailure;
+				}
+			}
+		};
+		BatchUpdateException e = assertThrows(BatchUpdateException.class, () -> run(failing, true, "insert fail"));
+		assertEquals("constraint failed", e.getMessage());
+		assertEquals(1, e.getSuppressed().length);
+		assertSame(rollbackFailure, e.getSuppressed()[0]);
+	}
+}
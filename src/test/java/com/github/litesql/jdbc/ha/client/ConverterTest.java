@@ -0,0 +1,185 @@
+package com.github.litesql.jdbc.ha.client;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.Any;
+import com.google.protobuf.BoolValue;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.BytesValue;
+import com.google.protobuf.DoubleValue;
+import com.google.protobuf.Empty;
+import com.google.protobuf.FloatValue;
+import com.google.protobuf.Int32Value;
+import com.google.protobuf.Int64Value;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.StringValue;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.UInt32Value;
+import com.google.protobuf.UInt64Value;
+
+/**
+ * Round trips of values packed by protobuf through the wire decoder of
+ * {@link Converter}.
+ */
+public class ConverterTest {
+
+	private static HAColumn decode(Message message) throws InvalidProtocolBufferException {
+		Any value = Any.pack(message);
+		HAColumn column = new HAColumn(1);
+		Converter.decode(Converter.ValueType.of(value.getTypeUrlBytes()), value.getValue(), column);
+		assertEquals(1, column.size());
+		return column;
+	}
+
+	private static Object fromAny(Message message) throws InvalidProtocolBufferException {
+		return Converter.fromAny(Any.pack(message));
+	}
+
+	@Test
+	public void int64() throws Exception {
+		for (long v : new long[] { 0, 1, -1, 127, 128, Long.MIN_VALUE, Long.MAX_VALUE, -1234567890123L }) {
+			assertEquals(v, decode(Int64Value.of(v)).getLong(0));
+			assertEquals(v, fromAny(Int64Value.of(v)));
+		}
+	}
+
+	@Test
+	public void int32() throws Exception {
+		for (int v : new int[] { 0, 1, -1, 300, Integer.MIN_VALUE, Integer.MAX_VALUE, -65536 }) {
+			assertEquals(v, decode(Int32Value.of(v)).getLong(0));
+			assertEquals(Integer.valueOf(v), decode(Int32Value.of(v)).getObject(0));
+			assertEquals(v, fromAny(Int32Value.of(v)));
+		}
+	}
+
+	@Test
+	public void int32ColumnWidenedByInt64() throws Exception {
+		HAColumn column = new HAColumn(2);
+		Any small = Any.pack(Int32Value.of(7));
+		Any large = Any.pack(Int64Value.of(1L << 40));
+		Converter.decode(Converter.ValueType.of(small.getTypeUrlBytes()), small.getValue(), column);
+		assertEquals(Integer.valueOf(7), column.getObject(0));
+		Converter.decode(Converter.ValueType.of(large.getTypeUrlBytes()), large.getValue(), column);
+		assertEquals(Long.valueOf(7), column.getObject(0));
+		assertEquals(Long.valueOf(1L << 40), column.getObject(1));
+	}
+
+	@Test
+	public void unsigned() throws Exception {
+		assertEquals(-1L, decode(UInt64Value.of(-1L)).getLong(0));
+		assertEquals(0L, decode(UInt64Value.of(0)).getLong(0));
+		assertEquals(-1L, decode(UInt32Value.of(-1)).getLong(0));
+		assertEquals(42L, decode(UInt32Value.of(42)).getLong(0));
+	}
+
+	@Test
+	public void defaultsWithoutField() throws Exception {
+		// proto3 omits fields holding their default value
+		assertEquals(0, Int64Value.of(0).getSerializedSize());
+		assertFalse(decode(Int64Value.of(0)).isNull(0));
+		assertEquals(0L, decode(Int64Value.of(0)).getLong(0));
+		assertEquals(0d, decode(DoubleValue.of(0)).getDouble(0));
+		assertEquals(0f, fromAny(FloatValue.of(0)));
+		assertEquals(Boolean.FALSE, fromAny(BoolValue.of(false)));
+		assertEquals("", fromAny(StringValue.of("")));
+		assertArrayEquals(new byte[0], (byte[]) fromAny(BytesValue.of(ByteString.EMPTY)));
+		assertEquals(Instant.EPOCH, fromAny(Timestamp.getDefaultInstance()));
+	}
+
+	@Test
+	public void doubles() throws Exception {
+		for (double v : new double[] { 1.5, -2.25, Double.MAX_VALUE, Double.MIN_VALUE, Double.NEGATIVE_INFINITY }) {
+			assertEquals(v, decode(DoubleValue.of(v)).getDouble(0));
+			assertEquals(v, fromAny(DoubleValue.of(v)));
+		}
+		assertTrue(Double.isNaN(decode(DoubleValue.of(Double.NaN)).getDouble(0)));
+		assertEquals(Double.doubleToRawLongBits(-0.0),
+				Double.doubleToRawLongBits(decode(DoubleValue.of(-0.0)).getDouble(0)));
+	}
+
+	@Test
+	public void floats() throws Exception {
+		assertEquals(3.5f, fromAny(FloatValue.of(3.5f)));
+		assertEquals(-0.0f, fromAny(FloatValue.of(-0.0f)));
+		assertTrue(Float.isNaN((Float) fromAny(FloatValue.of(Float.NaN))));
+	}
+
+	@Test
+	public void booleans() throws Exception {
+		assertEquals(Boolean.TRUE, fromAny(BoolValue.of(true)));
+		assertEquals(Boolean.TRUE, decode(BoolValue.of(true)).getObject(0));
+	}
+
+	@Test
+	public void strings() throws Exception {
+		assertEquals("hello", decode(StringValue.of("hello")).getObject(0));
+		assertEquals("h\u00e9llo \u2603", fromAny(StringValue.of("h\u00e9llo \u2603")));
+		// lengths of 128 bytes and more take a multi-byte varint
+		char[] chars = new char[20000];
+		Arrays.fill(chars, 'x');
+		String large = new String(chars);
+		assertEquals(large, fromAny(StringValue.of(large)));
+		assertEquals(large.substring(0, 128), fromAny(StringValue.of(large.substring(0, 128))));
+	}
+
+	@Test
+	public void bytes() throws Exception {
+		byte[] data = new byte[300];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		assertArrayEquals(data, (byte[]) decode(BytesValue.of(ByteString.copyFrom(data))).getObject(0));
+		assertArrayEquals(new byte[] { 1 }, (byte[]) fromAny(BytesValue.of(ByteString.copyFrom(new byte[] { 1 }))));
+	}
+
+	@Test
+	public void timestamps() throws Exception {
+		Instant instant = Instant.ofEpochSecond(1700000000L, 123456789);
+		assertEquals(instant, fromAny(
+				Timestamp.newBuilder().setSeconds(instant.getEpochSecond()).setNanos(instant.getNano()).build()));
+		Instant before = Instant.ofEpochSecond(-86400L, 5);
+		assertEquals(before,
+				fromAny(Timestamp.newBuilder().setSeconds(before.getEpochSecond()).setNanos(before.getNano()).build()));
+	}
+
+	@Test
+	public void empty() throws Exception {
+		assertTrue(decode(Empty.getDefaultInstance()).isNull(0));
+		assertNull(fromAny(Empty.getDefaultInstance()));
+	}
+
+	@Test
+	public void truncatedPayloads() {
+		ByteString text = StringValue.of("hello world").toByteString();
+		assertThrows(InvalidProtocolBufferException.class, () -> Converter.decode(Converter.ValueType.STRING,
+				text.substring(0, text.size() - 3), new HAColumn(1)));
+		ByteString real = DoubleValue.of(1.5).toByteString();
+		assertThrows(InvalidProtocolBufferException.class, () -> Converter.decode(Converter.ValueType.DOUBLE,
+				real.substring(0, real.size() - 1), new HAColumn(1)));
+		// tag of field 1 followed by a varint whose continuation byte is missing
+		ByteString varint = ByteString.copyFrom(new byte[] { 0x08, (byte) 0x80 });
+		assertThrows(InvalidProtocolBufferException.class,
+				() -> Converter.decode(Converter.ValueType.INT64, varint, new HAColumn(1)));
+		ByteString blob = BytesValue.of(ByteString.copyFrom("some bytes", StandardCharsets.UTF_8)).toByteString();
+		assertThrows(InvalidProtocolBufferException.class, () -> Converter.decode(Converter.ValueType.BYTES,
+				blob.substring(0, 4), new HAColumn(1)));
+	}
+
+	@Test
+	public void unsupportedType() {
+		assertThrows(InvalidProtocolBufferException.class,
+				() -> Converter.ValueType.of("type.googleapis.com/google.protobuf.Struct"));
+	}
+}
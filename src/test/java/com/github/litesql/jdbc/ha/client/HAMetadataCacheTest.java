@@ -0,0 +1,171 @@
+package com.github.litesql.jdbc.ha.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class HAMetadataCacheTest {
+
+	private static final List<String> COLUMNS = Arrays.asList("kind", "tbl", "name", "type", "sql", "n1", "n2",
+			"n3", "s1", "s2", "s3", "s4", "s5");
+
+	/**
+	 * A database holding tables t and u; counts the queries it answers.
+	 */
+	private static class FakeSource implements HAMetadataCache.Source {
+		long version = 1;
+		boolean available = true;
+		int versionQueries;
+		int schemaQueries;
+
+		@Override
+		public HAExecutionResult query(String sql) {
+			if (!this.available) {
+				return null;
+			}
+			if (sql.equals("PRAGMA schema_version")) {
+				this.versionQueries++;
+				return new HAExecutionResult(Arrays.asList("schema_version"),
+						Collections.singletonList(new Object[] { this.version }));
+			}
+			this.schemaQueries++;
+			List<Object[]> rows = new ArrayList<>();
+			rows.add(row("c", "t", "id", "INTEGER", null, 0L, 1L, 1L, null));
+			rows.add(row("c", "t", "u_id", "INTEGER", null, 1L, 0L, 0L, "0"));
+			rows.add(row("c", "u", "id", "INTEGER", null, 0L, 0L, 1L, null));
+			rows.add(row("f", "t", "u", null, null, 0L, 0L, null, "u_id", "id", "CASCADE", "NO ACTION", "NONE"));
+			rows.add(row("i", "t", "t_u", null, null, 0L, 0L, 1L, "u_id"));
+			rows.add(row("t", "t", null, "table", "CREATE TABLE t(id INTEGER PRIMARY KEY, u_id INTEGER)"));
+			rows.add(row("t", "u", null, "table", "CREATE TABLE u(id INTEGER PRIMARY KEY)"));
+			rows.add(row("v", null, null, null, null, this.version));
+			return new HAExecutionResult(COLUMNS, rows);
+		}
+
+		private static Object[] row(Object... values) {
+			return Arrays.copyOf(values, COLUMNS.size());
+		}
+	}
+
+	private String endpoint;
+
+	@BeforeEach
+	public void clear() {
+		HAMetadataCache.clear();
+		this.endpoint = "localhost:" + UUID.randomUUID();
+	}
+
+	@Test
+	public void loadsSchema() throws Exception {
+		HAMetadataCache.Schema schema = HAMetadataCache.get(this.endpoint, "db", 60_000, new FakeSource());
+		assertEquals(1, schema.getVersion());
+		assertEquals(2, schema.getTables().size());
+		HAMetadataCache.Table table = schema.getTable("T");
+		assertEquals("table", table.getType());
+		assertEquals(2, table.getColumns().size());
+		assertEquals(1, table.getColumns().get(0).getPrimaryKey());
+		assertTrue(table.getColumns().get(0).isNotNull());
+		assertEquals("0", table.getColumns().get(1).getDefaultValue());
+		assertEquals("t_u", table.getIndexes().get(0).getName());
+		assertTrue(table.getIndexes().get(0).isUnique());
+		assertEquals(Arrays.asList("u_id"), table.getIndexes().get(0).getColumns());
+		HAMetadataCache.ForeignKey fk = table.getForeignKeys().get(0);
+		assertEquals("u", fk.getTable());
+		assertEquals("u_id", fk.getFrom());
+		assertEquals("id", fk.getTo());
+		assertEquals("CASCADE", fk.getOnUpdate());
+		assertNull(schema.getTable("missing"));
+	}
+
+	@Test
+	public void servesCachedSchemaWithinCheckInterval() throws Exception {
+		FakeSource source = new FakeSource();
+		HAMetadataCache.Schema schema = HAMetadataCache.get(this.endpoint, "db", 60_000, source);
+		source.version = 2;
+		assertSame(schema, HAMetadataCache.get(this.endpoint, "db", 60_000, source));
+		assertEquals(0, source.versionQueries);
+		assertEquals(1, source.schemaQueries);
+	}
+
+	@Test
+	public void reloadsWhenSchemaVersionChanges() throws Exception {
+		FakeSource source = new FakeSource();
+		HAMetadataCache.Schema schema = HAMetadataCache.get(this.endpoint, "db", 0, source);
+		assertSame(schema, HAMetadataCache.get(this.endpoint, "db", 0, source));
+		assertEquals(1, source.versionQueries);
+		assertEquals(1, source.schemaQueries);
+		source.version = 2;
+		HAMetadataCache.Schema reloaded = HAMetadataCache.get(this.endpoint, "db", 0, source);
+		assertNotSame(schema, reloaded);
+		assertEquals(2, reloaded.getVersion());
+		assertEquals(2, source.schemaQueries);
+	}
+
+	@Test
+	public void reloadsAfterInvalidation() throws Exception {
+		FakeSource source = new FakeSource();
+		HAMetadataCache.Schema schema = HAMetadataCache.get(this.endpoint, "db", 60_000, source);
+		HAMetadataCache.Schema other = HAMetadataCache.get(this.endpoint, "other", 60_000, source);
+		HAMetadataCache.invalidate(this.endpoint, "db");
+		assertNotSame(schema, HAMetadataCache.get(this.endpoint, "db", 60_000, source));
+		assertSame(other, HAMetadataCache.get(this.endpoint, "other", 60_000, source));
+		assertEquals(3, source.schemaQueries);
+	}
+
+	@Test
+	public void discardsSchemaLoadedDuringInvalidation() throws Exception {
+		FakeSource source = new FakeSource() {
+			@Override
+			public HAExecutionResult query(String sql) {
+				HAExecutionResult result = super.query(sql);
+				if (this.schemaQueries == 1) {
+					// a DDL statement is sent while the schema is being read
+					HAMetadataCache.invalidate("db");
+				}
+				return result;
+			}
+		};
+		assertNotNull(HAMetadataCache.get(this.endpoint, "db", 60_000, source));
+		HAMetadataCache.get(this.endpoint, "db", 60_000, source);
+		assertEquals(2, source.schemaQueries);
+	}
+
+	@Test
+	public void keysReplicaSchemasByFile() throws Exception {
+		FakeSource first = new FakeSource();
+		FakeSource second = new FakeSource();
+		second.version = 7;
+		assertEquals(1, HAMetadataCache.getReplicaSchema("/data/a.db", "db", first).getVersion());
+		assertEquals(7, HAMetadataCache.getReplicaSchema("/data/b.db", "db", second).getVersion());
+		// a replica schema is checked on every use
+		HAMetadataCache.getReplicaSchema("/data/a.db", "db", first);
+		assertEquals(1, first.versionQueries);
+		assertEquals(1, first.schemaQueries);
+		// a DDL statement sent to the server drops the replica schemas too
+		HAMetadataCache.invalidate(this.endpoint, "db");
+		HAMetadataCache.getReplicaSchema("/data/a.db", "db", first);
+		assertEquals(2, first.schemaQueries);
+	}
+
+	@Test
+	public void returnsNullWhenSourceIsUnavailable() throws Exception {
+		FakeSource source = new FakeSource();
+		source.available = false;
+		assertNull(HAMetadataCache.getReplicaSchema("/data/a.db", "db", source));
+		source.available = true;
+		assertNotNull(HAMetadataCache.getReplicaSchema("/data/a.db", "db", source));
+		source.available = false;
+		assertNull(HAMetadataCache.getReplicaSchema("/data/a.db", "db", source));
+	}
+}
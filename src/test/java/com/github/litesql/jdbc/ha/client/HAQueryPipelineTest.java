@@ -0,0 +1,119 @@
+package com.github.litesql.jdbc.ha.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.Test;
+
+import build.buf.gen.sql.v1.QueryRequest;
+import io.grpc.stub.StreamObserver;
+
+public class HAQueryPipelineTest {
+
+	/**
+	 * Records the SQL of the requests written to the stream.
+	 */
+	private static class RecordingStream implements StreamObserver<QueryRequest> {
+		final List<String> written = new ArrayList<>();
+		int completed;
+
+		@Override
+		public void onNext(QueryRequest request) {
+			this.written.add(request.getSql());
+		}
+
+		@Override
+		public void onError(Throwable t) {
+		}
+
+		@Override
+		public void onCompleted() {
+			this.completed++;
+		}
+	}
+
+	private static HAQueryPipeline.PendingQuery query(String sql) {
+		return new HAQueryPipeline.PendingQuery(QueryRequest.newBuilder().setSql(sql).build());
+	}
+
+	private static SQLException failure(HAQueryPipeline.PendingQuery query) {
+		ExecutionException e = assertThrows(ExecutionException.class, () -> query.response.get());
+		return (SQLException) e.getCause();
+	}
+
+	@Test
+	public void queuesRequestsBeyondLimit() {
+		RecordingStream stream = new RecordingStream();
+		HAQueryPipeline pipeline = new HAQueryPipeline(stream, 2);
+		HAQueryPipeline.PendingQuery first = query("q1");
+		HAQueryPipeline.PendingQuery second = query("q2");
+		HAQueryPipeline.PendingQuery third = query("q3");
+		pipeline.send(first);
+		pipeline.send(second);
+		pipeline.send(third);
+		assertEquals(Arrays.asList("q1", "q2"), stream.written);
+		// responses arrive in request order and free a slot for the queued request
+		assertSame(first, pipeline.poll());
+		assertEquals(Arrays.asList("q1", "q2", "q3"), stream.written);
+		assertSame(second, pipeline.poll());
+		assertSame(third, pipeline.poll());
+		assertNull(pipeline.poll());
+		assertFalse(pipeline.hasPendingRequests());
+	}
+
+	@Test
+	public void writesOneAtATimeWithoutPipelining() {
+		RecordingStream stream = new RecordingStream();
+		HAQueryPipeline pipeline = new HAQueryPipeline(stream, 0);
+		HAQueryPipeline.PendingQuery first = query("q1");
+		pipeline.send(first);
+		pipeline.send(query("q2"));
+		assertEquals(Arrays.asList("q1"), stream.written);
+		assertTrue(pipeline.hasPendingRequests());
+		assertSame(first, pipeline.poll());
+		assertEquals(Arrays.asList("q1", "q2"), stream.written);
+	}
+
+	@Test
+	public void failsPendingRequestsOnStreamError() {
+		RecordingStream stream = new RecordingStream();
+		HAQueryPipeline pipeline = new HAQueryPipeline(stream, 1);
+		HAQueryPipeline.PendingQuery inflight = query("q1");
+		HAQueryPipeline.PendingQuery queued = query("q2");
+		pipeline.send(inflight);
+		pipeline.send(queued);
+		IOException cause = new IOException("stream reset");
+		pipeline.fail(cause);
+		assertSame(cause, failure(inflight).getCause());
+		assertSame(cause, failure(queued).getCause());
+		assertFalse(pipeline.hasPendingRequests());
+		HAQueryPipeline.PendingQuery later = query("q3");
+		pipeline.send(later);
+		assertEquals("bad connection", failure(later).getMessage());
+		assertEquals(Arrays.asList("q1"), stream.written);
+	}
+
+	@Test
+	public void rejectsRequestsAfterClose() {
+		RecordingStream stream = new RecordingStream();
+		HAQueryPipeline pipeline = new HAQueryPipeline(stream, 4);
+		assertTrue(pipeline.close());
+		assertFalse(pipeline.close());
+		assertEquals(1, stream.completed);
+		HAQueryPipeline.PendingQuery query = query("q1");
+		pipeline.send(query);
+		assertEquals("connection closed", failure(query).getMessage());
+		assertTrue(stream.written.isEmpty());
+	}
+}
@@ -0,0 +1,183 @@
+package com.github.litesql.jdbc.ha.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.litesql.jdbc.ha.HAUtils;
+
+public class HAResultCacheTest {
+
+	private static final long BUDGET = 100_000;
+	private static final long TTL = 60_000;
+
+	private static final String USER = HAResultCache.credentialOf("token");
+
+	/**
+	 * Each test reads its own endpoint, as observed txseqs are never forgotten.
+	 */
+	private String endpoint;
+
+	@BeforeAll
+	public static void reserve() {
+		HAResultCache.reserve(BUDGET);
+	}
+
+	@BeforeEach
+	public void clear() {
+		HAResultCache.clear();
+		this.endpoint = "localhost:" + UUID.randomUUID();
+	}
+
+	private static HAExecutionResult result(String value) {
+		return new HAExecutionResult(Arrays.asList("v"), Collections.singletonList(new Object[] { value }));
+	}
+
+	private HAExecutionResult get(String replicationID, String sql) {
+		return HAResultCache.get(this.endpoint, USER, replicationID, sql, null, TTL);
+	}
+
+	private void put(String replicationID, String sql, HAExecutionResult result, long txseq) {
+		HAResultCache.put(this.endpoint, USER, replicationID, sql, null, result, txseq);
+	}
+
+	@Test
+	public void servesCachedResult() {
+		HAExecutionResult result = result("a");
+		put("db", "select v from t", result, 1);
+		assertSame(result, get("db", "select v from t"));
+		assertNull(get("db", "select v from t where v = 1"));
+		assertNull(get("other", "select v from t"));
+		assertTrue(HAResultCache.size() > 0);
+	}
+
+	@Test
+	public void keysOnParameters() {
+		Map<Object, Object> one = new HashMap<>();
+		one.put(1, "a");
+		Map<Object, Object> two = new HashMap<>();
+		two.put(1, "b");
+		HAExecutionResult result = result("a");
+		HAResultCache.put(this.endpoint, USER, "db", "select v from t where v = ?", one, result, 1);
+		assertSame(result, HAResultCache.get(this.endpoint, USER, "db", "select v from t where v = ?",
+				new HashMap<>(one), TTL));
+		assertNull(HAResultCache.get(this.endpoint, USER, "db", "select v from t where v = ?", two, TTL));
+	}
+
+	@Test
+	public void separatesCredentials() {
+		put("db", "select v from t", result("a"), 1);
+		String other = HAResultCache.credentialOf("other");
+		assertNotEquals(USER, other);
+		assertNull(HAResultCache.get(this.endpoint, other, "db", "select v from t", null, TTL));
+		assertNull(HAResultCache.get(this.endpoint, HAResultCache.credentialOf(null), "db", "select v from t", null,
+				TTL));
+		assertEquals("", HAResultCache.credentialOf(""));
+		assertFalse(USER.contains("token"));
+	}
+
+	@Test
+	public void missesAfterNewerTxseq() {
+		put("db", "select v from t", result("a"), 5);
+		HAResultCache.observe(this.endpoint, "db", 5);
+		assertSame(get("db", "select v from t"), get("db", "select v from t"));
+		HAResultCache.observe(this.endpoint, "db", 6);
+		assertNull(get("db", "select v from t"));
+		assertEquals(0, HAResultCache.size());
+	}
+
+	@Test
+	public void skipsResultOlderThanObserved() {
+		HAResultCache.observe(this.endpoint, "db", 7);
+		put("db", "select v from t", result("a"), 6);
+		assertNull(get("db", "select v from t"));
+		// txseqs of other databases do not matter
+		put("other", "select v from t", result("a"), 6);
+		assertNotNull(get("other", "select v from t"));
+	}
+
+	@Test
+	public void expiresAfterTtl() throws Exception {
+		put("db", "select v from t", result("a"), 1);
+		Thread.sleep(5);
+		assertNull(HAResultCache.get(this.endpoint, USER, "db", "select v from t", null, 1));
+	}
+
+	@Test
+	public void invalidatesDatabase() {
+		put("db", "select v from t", result("a"), 1);
+		put("other", "select v from t", result("a"), 1);
+		HAResultCache.invalidate("db");
+		assertNull(get("db", "select v from t"));
+		assertNotNull(get("other", "select v from t"));
+	}
+
+	@Test
+	public void invalidatesTable() {
+		put("db", "select v from t", result("a"), 1);
+		put("db", "SELECT v FROM T WHERE v > 0", result("a"), 1);
+		put("db", "select v from t2", result("a"), 1);
+		put("db", "select v from u join t_t on 1", result("a"), 1);
+		put("other", "select v from t", result("a"), 1);
+		HAResultCache.invalidateTable("db", "t");
+		assertNull(get("db", "select v from t"));
+		assertNull(get("db", "SELECT v FROM T WHERE v > 0"));
+		assertNotNull(get("db", "select v from t2"));
+		assertNotNull(get("db", "select v from u join t_t on 1"));
+		assertNotNull(get("other", "select v from t"));
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() {
+		char[] chars = new char[12_000];
+		Arrays.fill(chars, 'x');
+		String payload = new String(chars);
+		// four entries fit in the budget, a fifth one does not
+		for (int i = 0; i < 4; i++) {
+			put("db", "select " + i, result(payload), 1);
+		}
+		assertNotNull(get("db", "select 0"));
+		put("db", "select 4", result(payload), 1);
+		assertTrue(HAResultCache.size() <= BUDGET);
+		assertNull(get("db", "select 1"));
+		for (int i : new int[] { 0, 2, 3, 4 }) {
+			assertNotNull(get("db", "select " + i), "select " + i);
+		}
+	}
+
+	@Test
+	public void skipsResultLargerThanBudget() {
+		char[] chars = new char[(int) BUDGET];
+		Arrays.fill(chars, 'x');
+		put("db", "select v from t", result(new String(chars)), 1);
+		assertNull(get("db", "select v from t"));
+		assertEquals(0, HAResultCache.size());
+	}
+
+	@Test
+	public void detectsVolatileQueries() {
+		for (String sql : new String[] { "select random()", "select RANDOMBLOB (16)", "select changes()",
+				"select last_insert_rowid()", "select datetime()", "select date('now')", "select current_timestamp",
+				"select * from temp.t", "select * from sqlite_temp_master" }) {
+			assertTrue(HAUtils.isVolatileQuery(sql), sql);
+		}
+		for (String sql : new String[] { "select * from t", "select date(created) from t",
+				"select * from randomness", "select temperature from t", "select datetime(ts, 'unixepoch') from t" }) {
+			assertFalse(HAUtils.isVolatileQuery(sql), sql);
+		}
+	}
+}